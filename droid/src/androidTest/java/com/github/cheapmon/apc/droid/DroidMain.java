@@ -9,14 +9,11 @@ import com.github.cheapmon.apc.droid.install.GooglePlayWizard;
 import com.github.cheapmon.apc.droid.install.GooglePlayWizard.InstallState;
 import com.github.cheapmon.apc.droid.search.SearchAlgorithm;
 import com.github.cheapmon.apc.droid.search.SearchHelper;
+import com.github.cheapmon.apc.droid.util.BudgetExhaustedException;
 import com.github.cheapmon.apc.droid.util.DroidException;
 import com.github.cheapmon.apc.droid.util.DroidLogger;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.util.Scanner;
+import com.github.cheapmon.apc.droid.util.ResultChannel;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -34,9 +31,19 @@ import org.junit.runner.RunWith;
 public class DroidMain {
 
   /**
-   * Labels of Android apps
+   * Maximum time spent on one app in milliseconds
    */
-  private String[] ids;
+  private static final long BUDGET_MILLIS = 15 * 60 * 1000;
+
+  /**
+   * Maximum number of clicks spent on one app
+   */
+  private static final int BUDGET_CLICKS = 2000;
+
+  /**
+   * Maximum number of restarts of one app
+   */
+  private static final int BUDGET_RESTARTS = 400;
 
   /**
    * Extraction mode to use
@@ -49,36 +56,92 @@ public class DroidMain {
   private String algorithm;
 
   /**
-   * Entry point for Droid pipeline. Check for arguments. Configure extraction.
+   * Port on host computer to send results to
+   */
+  private int port;
+
+  /**
+   * Label of this device on host computer
+   */
+  private String device;
+
+  /**
+   * Connection to host computer
+   */
+  private ResultChannel channel;
+
+  /**
+   * Entry point for Droid pipeline. Check for arguments. Configure extraction.<br><br>
+   *
+   * The outcome of every application is reported to the host computer. A failing extraction is
+   * reported and does not stop the remaining applications. Applications whose installed version
+   * has already been extracted are skipped.<br><br>
+   *
+   * The connection is closed in any case, so the host computer notices an aborted run.
    */
   @Test
   public void main() throws DroidException {
     this.parseCommands();
-    if (this.mode.equals("MODEL")) {
-      for (String id : this.ids) {
-        if (GooglePlayWizard.install(id) != InstallState.FAILURE) {
-          Model model = new ModelExtractor(id).getModel();
-          this.send(model.toXML(), id);
+    this.channel = new ResultChannel("10.0.2.2", this.port, this.device);
+    try {
+      SearchAlgorithm algorithm = null;
+      if (!this.mode.equals("MODEL")) {
+        try {
+          algorithm = SearchHelper.get(this.algorithm).newInstance();
+        } catch (InstantiationException | IllegalAccessException ex) {
+          throw new DroidException("Running algorithm failed", ex);
         }
-        GooglePlayWizard.removeSilently(id);
       }
-      this.send(null, null);
-    } else {
-      try {
-        SearchAlgorithm algorithm = SearchHelper.get(this.algorithm).newInstance();
-        for (String id : this.ids) {
-          if (GooglePlayWizard.install(id) != InstallState.FAILURE) {
-            String result = algorithm.run(id);
-            if (result != null) {
-              this.send(result, id);
-            }
+      for (String id = this.channel.nextID(); id != null; id = this.channel.nextID()) {
+        if (GooglePlayWizard.install(id) == InstallState.FAILURE) {
+          this.channel.status(id, ResultChannel.NOT_AVAILABLE);
+        } else {
+          this.channel.status(id, ResultChannel.INSTALLED);
+          long version = GooglePlayWizard.version(id);
+          if (version < 0 || !this.channel.isCached(id, version)) {
+            this.extract(id, algorithm);
           }
-          GooglePlayWizard.removeSilently(id);
         }
-        this.send(null, null);
-      } catch (InstantiationException | IllegalAccessException ex) {
-        throw new DroidException("Running algorithm failed", ex);
+        GooglePlayWizard.removeSilently(id);
+      }
+      this.channel.close();
+    } finally {
+      this.channel.closeSilently();
+    }
+  }
+
+  /**
+   * Extract policy or model of an installed app and send it to host computer.<br><br>
+   *
+   * Every app gets its own budget of time, clicks and restarts. A search exceeding it is reported
+   * as stopped, model extraction returns the pages found so far. A search finishing without a
+   * policy is reported as not found, only errors are reported as failed.
+   *
+   * @param id Identification of app
+   * @param algorithm Search algorithm, {@code null} when extracting models
+   * @throws DroidException Sending fails
+   */
+  private void extract(String id, SearchAlgorithm algorithm) throws DroidException {
+    SearchBudget budget = new SearchBudget(BUDGET_MILLIS, BUDGET_CLICKS, BUDGET_RESTARTS);
+    try {
+      String result;
+      if (algorithm == null) {
+        Model model = new ModelExtractor(id, budget, SearchHelper.getSampler()).getModel();
+        result = model.toXML();
+      } else {
+        result = algorithm.run(id, budget);
+      }
+      if (result != null) {
+        this.channel.send(id, result);
+      } else {
+        this.channel.status(id, ResultChannel.NOT_FOUND);
       }
+    } catch (BudgetExhaustedException ex) {
+      DroidLogger.log(String.format("Search of %s stopped: %s", id, ex.getMessage()));
+      this.channel.status(id, ResultChannel.STOPPED);
+    } catch (DroidException | RuntimeException ex) {
+      DroidLogger.log(String.format("Extraction of %s failed: %s", id, ex.getMessage()));
+      this.channel.status(id, ResultChannel.FAILED);
     }
   }
 
@@ -87,67 +150,21 @@ public class DroidMain {
    */
   private void parseCommands() throws DroidException {
     Bundle extras = InstrumentationRegistry.getArguments();
-    try {
-      this.ids = this.readIDFile(extras.getString("file"));
-    } catch (FileNotFoundException ex) {
-      throw new DroidException("Reading id file failed", ex);
-    }
     this.mode = extras.getString("mode");
     this.algorithm = extras.getString("algorithm");
+    this.port = Integer.parseInt(extras.getString("port", "2000"));
+    this.device = extras.getString("device", "");
+    String locales = extras.getString("locales", "de,en");
+    SearchHelper.loadNavigation(locales.split(","));
+    int sample = Integer.parseInt(extras.getString("sample", "3"));
+    SearchHelper.setSampleSize(sample);
     DroidLogger.log("Droid");
     DroidLogger.space();
-    DroidLogger.log("Found ids:");
-    for (String id : this.ids) {
-      DroidLogger.log(String.format("* %s", id));
-    }
     DroidLogger.log(String.format("Extraction mode is %s", this.mode));
     DroidLogger.log(String.format("Using %s", this.algorithm));
+    DroidLogger.log(String.format("Navigation keywords for %s", locales));
+    DroidLogger.log(String.format("Clicking %s equivalent views", (sample > 0) ? sample : "all"));
     DroidLogger.space();
   }
 
-  /**
-   * Read ids from id file.
-   *
-   * @param pathToFile Path to file
-   * @return Application IDs
-   * @throws FileNotFoundException File read fails
-   */
-  private String[] readIDFile(String pathToFile) throws FileNotFoundException {
-    Scanner scanner = new Scanner(new FileReader(pathToFile));
-    StringBuilder builder = new StringBuilder();
-    while (scanner.hasNext()) {
-      builder.append(scanner.next()).append("\n");
-    }
-    scanner.close();
-    return builder.toString().split("\n");
-  }
-
-  /**
-   * Send extracted text or model to to host computer.
-   *
-   * @param txt Text
-   * @param id Identification of app
-   * @throws DroidException Sending fails
-   */
-  private void send(String txt, String id) throws DroidException {
-    try {
-      Socket s = new Socket("10.0.2.2", 2000);
-      PrintWriter out = new PrintWriter(s.getOutputStream());
-      if (txt == null && id == null) {
-        out.print("\n");
-        out.print("OK");
-      } else {
-        out.print(String.format("%s\n", id));
-        out.print(txt);
-        out.print("\n");
-        out.print("---");
-      }
-      out.flush();
-      out.close();
-      s.close();
-    } catch (IOException ex) {
-      throw new DroidException("Sending txt failed", ex);
-    }
-  }
-
 }
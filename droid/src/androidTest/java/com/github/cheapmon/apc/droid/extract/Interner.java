@@ -0,0 +1,38 @@
+package com.github.cheapmon.apc.droid.extract;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Share one instance among equal immutable values.<br><br>
+ *
+ * Values are only weakly referenced, so pooled values are collected as soon as no model refers to
+ * them anymore.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+class Interner<T> {
+
+  /**
+   * Canonical instance of every value
+   */
+  private final Map<T, WeakReference<T>> pool = new WeakHashMap<>();
+
+  /**
+   * Get canonical instance of a value.
+   *
+   * @param value Value, must not change afterwards
+   * @return Equal value, the given one if there was none before
+   */
+  synchronized T intern(T value) {
+    WeakReference<T> reference = this.pool.get(value);
+    T known = (reference == null) ? null : reference.get();
+    if (known != null) {
+      return known;
+    }
+    this.pool.put(value, new WeakReference<>(value));
+    return value;
+  }
+
+}
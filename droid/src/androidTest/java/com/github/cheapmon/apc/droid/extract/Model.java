@@ -3,8 +3,11 @@ package com.github.cheapmon.apc.droid.extract;
 import android.graphics.Rect;
 import com.github.cheapmon.apc.droid.util.DroidException;
 import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -34,20 +37,15 @@ public class Model {
   private final String id;
 
   /**
-   * All nodes of this model
+   * All nodes of this model by their activity, in order of discovery
    */
-  private final List<ModelNode> nodes;
+  private final Map<String, ModelNode> nodes;
 
   /**
    * Display bounds of model
    */
   private final Rect bounds;
 
-  /**
-   * Display bounds of model
-   */
-  private Rect bounds;
-
   /**
    * Instantiate new model from scratch.
    *
@@ -57,7 +55,7 @@ public class Model {
   public Model(String id, Rect bounds) {
     this.id = id;
     this.bounds = bounds;
-    this.nodes = new ArrayList<>();
+    this.nodes = new LinkedHashMap<>();
   }
 
   /**
@@ -65,17 +63,47 @@ public class Model {
    *
    * @param page Page to add
    * @param activityName Activity the page belongs to
+   * @return Whether the activity is new to this model
    */
   public boolean add(Page page, String activityName) {
-    for (ModelNode node : this.nodes) {
-      if (node.add(page, activityName)) {
-        return false;
-      }
+    ModelNode node = this.nodes.get(activityName);
+    if (node != null) {
+      node.add(page);
+      return false;
     }
-    this.nodes.add(new ModelNode(page, activityName));
+    this.nodes.put(activityName, new ModelNode(page, activityName));
     return true;
   }
 
+  /**
+   * Get number of pages in this model.
+   *
+   * @return Number of pages
+   */
+  public int size() {
+    int size = 0;
+    for (ModelNode node : this.nodes.values()) {
+      size += node.size();
+    }
+    return size;
+  }
+
+  /**
+   * Estimate memory retained by the pages of this model.<br><br>
+   *
+   * Views, texts and names shared between pages are counted once. Paths to pages are not counted.
+   *
+   * @return Estimated size in bytes
+   */
+  public long footprint() {
+    Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    long size = 0;
+    for (ModelNode node : this.nodes.values()) {
+      size += node.footprint(seen);
+    }
+    return size;
+  }
+
   /**
    * Convert model to string containing its XML representation.
    *
@@ -91,7 +119,7 @@ public class Model {
       root.setAttribute("id", this.id);
       root.setAttribute("bounds", this.bounds.toShortString());
       document.appendChild(root);
-      for (ModelNode node : this.nodes) {
+      for (ModelNode node : this.nodes.values()) {
         root.appendChild(node.toElement(document));
       }
       TransformerFactory transformerFactory = TransformerFactory.newInstance();
@@ -2,9 +2,13 @@ package com.github.cheapmon.apc.droid.extract;
 
 import android.support.test.uiautomator.StaleObjectException;
 import android.support.test.uiautomator.UiObject2;
+import com.github.cheapmon.apc.droid.util.BudgetExhaustedException;
+import com.github.cheapmon.apc.droid.util.ClickableSampler;
 import com.github.cheapmon.apc.droid.util.DroidException;
+import com.github.cheapmon.apc.droid.util.DroidLogger;
 import com.github.cheapmon.apc.droid.util.DroidSelector;
 import com.github.cheapmon.apc.droid.util.ExtractionHelper;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
@@ -32,55 +36,85 @@ public class ModelExtractor {
    */
   private final ExtractionHelper e;
 
+  /**
+   * Sampler for equivalent clickable views, {@code null} to click all
+   */
+  private final ClickableSampler sampler;
+
   /**
    * Extract model for single application.
    *
    * @param id Application id
    */
   public ModelExtractor(String id) throws DroidException {
+    this(id, SearchBudget.unlimited(), null);
+  }
+
+  /**
+   * Extract model for single application within a budget.
+   *
+   * @param id Application id
+   * @param budget Budget for this app
+   * @param sampler Sampler for equivalent clickable views, {@code null} to click all
+   */
+  public ModelExtractor(String id, SearchBudget budget, ClickableSampler sampler)
+      throws DroidException {
     this.id = id;
-    this.e = new ExtractionHelper(id);
+    this.e = new ExtractionHelper(id, budget);
+    this.sampler = sampler;
   }
 
   /**
-   * Extract model.
+   * Extract model.<br><br>
+   *
+   * If the budget is exhausted, the pages found so far are returned.
    *
    * @return Extracted Model
+   * @throws DroidException Capturing layout fails
    */
-  public Model getModel() {
+  public Model getModel() throws DroidException {
     this.e.start();
     Queue<Page> pages = new LinkedList<>();
     Model model = new Model(this.id, this.e.getDisplayBounds());
     Page page = this.e.getPage();
     pages.add(page);
-    while (pages.size() > 0) {
-      page = pages.remove();
-      try {
-        this.e.start(page.getPath());
-      } catch (IndexOutOfBoundsException | NullPointerException | StaleObjectException ex) {
-        continue;
-      }
-      List<List<DroidSelector>> list = this.e.getClickable();
-      for (List<DroidSelector> d : list) {
+    this.e.setPosition(page.getPathNode());
+    try {
+      while (pages.size() > 0) {
+        page = pages.remove();
         try {
-          this.e.start(page.getPath());
-          UiObject2 clickView = this.e.find(d);
-          this.e.click(clickView);
-          Page newPage = this.e.getPage();
-          newPage.addToPath(page, d);
-          boolean isNew;
+          this.e.navigate(page.getPathNode());
+        } catch (IndexOutOfBoundsException | NullPointerException | StaleObjectException ex) {
+          continue;
+        }
+        List<List<DroidSelector>> list = this.e.getClickable(this.sampler);
+        for (List<DroidSelector> d : list) {
           try {
-            isNew = model.add(newPage, this.e.getActivityName());
-          } catch (DroidException ex) {
-            continue;
-          }
-          if (isNew) {
-            pages.add(newPage);
+            this.e.navigate(page.getPathNode());
+            UiObject2 clickView = this.e.find(d);
+            this.e.click(clickView);
+            Page newPage = this.e.getPage();
+            newPage.addToPath(page, d);
+            this.e.setPosition(newPage.getPathNode());
+            boolean isNew;
+            try {
+              isNew = model.add(newPage, this.e.getActivityName());
+            } catch (DroidException ex) {
+              continue;
+            }
+            if (isNew) {
+              pages.add(newPage);
+            }
+          } catch (IndexOutOfBoundsException | NullPointerException
+              | StaleObjectException ignored) {
           }
-        } catch (IndexOutOfBoundsException | NullPointerException | StaleObjectException ignored) {
         }
       }
+    } catch (BudgetExhaustedException ex) {
+      DroidLogger.log(String.format("Stopped extraction of %s: %s", this.id, ex.getMessage()));
     }
+    DroidLogger.log(String.format("Model of %s holds %d pages in about %d KiB", this.id,
+        model.size(), model.footprint() / 1024));
     return model;
   }
 }
@@ -1,7 +1,10 @@
 package com.github.cheapmon.apc.droid.extract;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -22,6 +25,11 @@ class ModelNode {
    */
   private final List<Page> pages;
 
+  /**
+   * Pages of this node by their equivalence hash
+   */
+  private final Map<Long, List<Page>> index;
+
   /**
    * Create new node.
    *
@@ -30,30 +38,70 @@ class ModelNode {
   ModelNode(Page page, String activityName) {
     this.activityName = activityName;
     this.pages = new ArrayList<>();
-    this.pages.add(page);
+    this.index = new HashMap<>();
+    this.put(page);
   }
 
   /**
-   * Add single page to this node or its children.
+   * Add single page to this node.<br><br>
+   *
+   * A page equivalent to a known page is merged into it, any other page is added. Only pages with
+   * the same equivalence hash are compared.
    *
    * @param page Page to add
-   * @param activityName Activity the page belongs to
    */
-  public boolean add(Page page, String activityName) {
-    if (this.activityName.equals(activityName)) {
-      for (Page p : this.pages) {
+  void add(Page page) {
+    List<Page> candidates = this.index.get(page.equivalenceHash());
+    if (candidates != null) {
+      for (Page p : candidates) {
         if (page.equals(p)) {
-          return true;
+          return;
         }
         if (page.isEquivalent(p)) {
           p.merge(page);
-          return true;
+          return;
         }
       }
-      this.pages.add(page);
-      return true;
     }
-    return false;
+    this.put(page);
+  }
+
+  /**
+   * Add page to this node without comparing it.
+   *
+   * @param page Page to add
+   */
+  private void put(Page page) {
+    this.pages.add(page);
+    List<Page> candidates = this.index.get(page.equivalenceHash());
+    if (candidates == null) {
+      candidates = new ArrayList<>(1);
+      this.index.put(page.equivalenceHash(), candidates);
+    }
+    candidates.add(page);
+  }
+
+  /**
+   * Get number of pages of this node.
+   *
+   * @return Number of pages
+   */
+  int size() {
+    return this.pages.size();
+  }
+
+  /**
+   * Estimate memory retained by the pages of this node.
+   *
+   * @param seen Objects already counted, shared objects are counted once
+   * @return Estimated size in bytes
+   */
+  long footprint(Set<Object> seen) {
+    long size = 0;
+    for (Page page : this.pages) {
+      size += page.footprint(seen);
+    }
+    return size;
   }
 
   /**
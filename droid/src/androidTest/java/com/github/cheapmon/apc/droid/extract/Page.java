@@ -1,9 +1,8 @@
 package com.github.cheapmon.apc.droid.extract;
 
-import android.support.test.uiautomator.UiObject2;
 import com.github.cheapmon.apc.droid.util.DroidSelector;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -18,23 +17,23 @@ import org.w3c.dom.Element;
 public class Page {
 
   /**
-   * Path to this page. List of elements clicked to reach this page.
+   * Path to this page. Node of elements clicked to reach this page.
    */
-  private List<List<DroidSelector>> path;
+  private PathNode path;
 
   /**
    * Root View of this page.
    */
-  private final View rootView;
+  private View rootView;
 
   /**
-   * Create new Page from UiAutomator representation.
+   * Create new Page from snapshot of the window hierarchy.
    *
-   * @param obj UiAutomator object of root view
+   * @param node Snapshot of root view
    */
-  public Page(UiObject2 obj) {
-    this.rootView = new View(obj);
-    this.path = new ArrayList<>();
+  public Page(SnapshotNode node) {
+    this.rootView = View.of(node);
+    this.path = PathNode.root(this.equivalenceHash());
   }
 
   /**
@@ -43,15 +42,30 @@ public class Page {
    * @param otherPage Page to merge from
    */
   public void merge(Page otherPage) {
-    this.rootView.merge(otherPage.rootView);
+    this.rootView = this.rootView.merge(otherPage.rootView);
   }
 
   /**
-   * Add clicked elements to path.
+   * Merge a scrolled container into this page. Only the container is converted, the rest of the
+   * layout is left as is.
+   *
+   * @param path Child indices from root view to container
+   * @param container Snapshot of container
+   */
+  public void merge(int[] path, SnapshotNode container) {
+    this.rootView = this.rootView.mergeAt(path, 0, View.of(container));
+  }
+
+  /**
+   * Add clicked elements to path.<br><br>
+   *
+   * The path of the given page is shared, not copied.
+   *
+   * @param page Page the element was clicked on
+   * @param selector Clicked element
    */
   public void addToPath(Page page, List<DroidSelector> selector) {
-    this.path = new ArrayList<>(page.getPath());
-    this.path.add(selector);
+    this.path = page.path.child(selector, this.equivalenceHash());
   }
 
   /**
@@ -60,9 +74,28 @@ public class Page {
    * @return Path
    */
   public List<List<DroidSelector>> getPath() {
+    return this.path.getPath();
+  }
+
+  /**
+   * Get node of path to this page.
+   *
+   * @return Path node
+   */
+  public PathNode getPathNode() {
     return this.path;
   }
 
+  /**
+   * Estimate memory retained by the views of this page.
+   *
+   * @param seen Objects already counted, shared objects are counted once
+   * @return Estimated size in bytes
+   */
+  long footprint(Set<Object> seen) {
+    return this.rootView.footprint(seen);
+  }
+
   /**
    * Dump full text found on layout.
    *
@@ -81,7 +114,7 @@ public class Page {
   public Element toElement(Document document) {
     Element page = document.createElement("page");
     Element path = document.createElement("path");
-    for (List<DroidSelector> list : this.path) {
+    for (List<DroidSelector> list : this.path.getPath()) {
       path.appendChild(this.fromSelector(document, list.get(list.size() - 1)));
     }
     page.appendChild(path);
@@ -124,6 +157,26 @@ public class Page {
     return otherRootView.equals(this.rootView);
   }
 
+  /**
+   * Get hash consistent with {@link #equals(Object)}.
+   *
+   * @return Hash code
+   */
+  @Override
+  public int hashCode() {
+    return this.rootView.hashCode();
+  }
+
+  /**
+   * Get hash consistent with {@link #isEquivalent(Object)}. It does not change when pages are
+   * merged.
+   *
+   * @return Equivalence hash
+   */
+  long equivalenceHash() {
+    return this.rootView.equivalenceHash();
+  }
+
   /**
    * Check this page for equivalency with another page.
    *
@@ -0,0 +1,160 @@
+package com.github.cheapmon.apc.droid.extract;
+
+import com.github.cheapmon.apc.droid.util.DroidSelector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Node in the trie of paths through an app.<br><br>
+ *
+ * Every node refers to its parent and to the element clicked to get there from the parent, so
+ * pages reached from the same page share the path to it instead of copying it. Every node also
+ * remembers the state of the page it leads to, so navigating to it can be verified.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class PathNode {
+
+  /**
+   * Node this node was reached from, {@code null} for the start of the app
+   */
+  private final PathNode parent;
+
+  /**
+   * Selector of element clicked on parent page, {@code null} for the start of the app
+   */
+  private final List<DroidSelector> step;
+
+  /**
+   * Number of clicks from start of the app
+   */
+  private final int depth;
+
+  /**
+   * Equivalence hash of page this node leads to
+   */
+  private final long state;
+
+  /**
+   * Create new node.
+   *
+   * @param parent Parent node
+   * @param step Element clicked on parent page
+   * @param state Equivalence hash of page
+   */
+  private PathNode(PathNode parent, List<DroidSelector> step, long state) {
+    this.parent = parent;
+    this.step = step;
+    this.depth = (parent == null) ? 0 : parent.depth + 1;
+    this.state = state;
+  }
+
+  /**
+   * Create node for the start of an app.
+   *
+   * @param state Equivalence hash of start page
+   * @return New root node
+   */
+  static PathNode root(long state) {
+    return new PathNode(null, null, state);
+  }
+
+  /**
+   * Create node reached by clicking an element on the page of this node.
+   *
+   * @param step Selector of clicked element
+   * @param state Equivalence hash of reached page
+   * @return New child node
+   */
+  PathNode child(List<DroidSelector> step, long state) {
+    return new PathNode(this, step, state);
+  }
+
+  /**
+   * Get node this node was reached from.
+   *
+   * @return Parent node, {@code null} for the start of the app
+   */
+  public PathNode getParent() {
+    return this.parent;
+  }
+
+  /**
+   * Get selector of element clicked to reach this node.
+   *
+   * @return Selector, {@code null} for the start of the app
+   */
+  public List<DroidSelector> getStep() {
+    return this.step;
+  }
+
+  /**
+   * Get number of clicks from start of the app.
+   *
+   * @return Depth of node
+   */
+  public int getDepth() {
+    return this.depth;
+  }
+
+  /**
+   * Get elements to click to reach this node from the start of the app.
+   *
+   * @return Path
+   */
+  public List<List<DroidSelector>> getPath() {
+    return this.getPath(null);
+  }
+
+  /**
+   * Get elements to click to reach this node from one of its ancestors.
+   *
+   * @param ancestor Ancestor node, {@code null} for the start of the app
+   * @return Path
+   */
+  public List<List<DroidSelector>> getPath(PathNode ancestor) {
+    List<List<DroidSelector>> path = new ArrayList<>(this.depth);
+    for (PathNode node = this; node != ancestor && node.parent != null; node = node.parent) {
+      path.add(node.step);
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  /**
+   * Find deepest node both this node and another node are reached through.
+   *
+   * @param other Other node
+   * @return Common ancestor, {@code null} if the nodes belong to different tries
+   */
+  public PathNode commonAncestor(PathNode other) {
+    PathNode a = this;
+    PathNode b = other;
+    while (a.depth > b.depth) {
+      a = a.parent;
+    }
+    while (b.depth > a.depth) {
+      b = b.parent;
+    }
+    while (a != b) {
+      if (a.parent == null) {
+        return null;
+      }
+      a = a.parent;
+      b = b.parent;
+    }
+    return a;
+  }
+
+  /**
+   * Check whether a page shows the state this node leads to.
+   *
+   * @param page Page currently shown
+   * @return Whether page is equivalent to the page of this node
+   */
+  public boolean matches(Page page) {
+    return page.equivalenceHash() == this.state;
+  }
+
+}
@@ -0,0 +1,350 @@
+package com.github.cheapmon.apc.droid.extract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Select nodes of a captured snapshot by their properties.<br><br>
+ *
+ * Conditions mirror those of {@code BySelector}: class and package names are compared exactly,
+ * patterns have to match the whole text and {@link #hasChild(SnapshotQuery)} and
+ * {@link #hasDescendant(SnapshotQuery)} constrain the subtree of a node. Like
+ * {@code UiObject2.findObjects}, searching visits the start node and its descendants in
+ * depth-first order. All conditions are evaluated locally, so analysing a screen needs only one
+ * capture instead of a walk of the live hierarchy for every selector.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class SnapshotQuery {
+
+  /**
+   * Condition on a text of a node.
+   */
+  public interface TextCondition {
+
+    /**
+     * Check whether text fulfills this condition.
+     *
+     * @param text Text to check, empty if node has none
+     * @return Whether condition is fulfilled
+     */
+    boolean matches(CharSequence text);
+
+  }
+
+  /**
+   * Required class name, {@code null} if any
+   */
+  private String className;
+
+  /**
+   * Required class name pattern, {@code null} if any
+   */
+  private Pattern classPattern;
+
+  /**
+   * Required package, {@code null} if any
+   */
+  private String packageName;
+
+  /**
+   * Required condition on text, {@code null} if any
+   */
+  private TextCondition text;
+
+  /**
+   * Required resource name pattern, {@code null} if any
+   */
+  private Pattern resourceName;
+
+  /**
+   * Required clickability, {@code null} if any
+   */
+  private Boolean clickable;
+
+  /**
+   * Required scrollability, {@code null} if any
+   */
+  private Boolean scrollable;
+
+  /**
+   * Queries at least one child has to match each
+   */
+  private final List<SnapshotQuery> children = new ArrayList<>();
+
+  /**
+   * Queries at least one descendant has to match each
+   */
+  private final List<SnapshotQuery> descendants = new ArrayList<>();
+
+  /**
+   * Require class of view.
+   *
+   * @param clazz View class
+   * @return This query
+   */
+  public SnapshotQuery clazz(Class<?> clazz) {
+    return this.clazz(clazz.getName());
+  }
+
+  /**
+   * Require class name of view.
+   *
+   * @param className Fully qualified class name
+   * @return This query
+   */
+  public SnapshotQuery clazz(String className) {
+    this.className = className;
+    return this;
+  }
+
+  /**
+   * Require class name of view to match a pattern.
+   *
+   * @param classPattern Pattern of fully qualified class name
+   * @return This query
+   */
+  public SnapshotQuery clazz(Pattern classPattern) {
+    this.classPattern = classPattern;
+    return this;
+  }
+
+  /**
+   * Require package of view.
+   *
+   * @param packageName Package name
+   * @return This query
+   */
+  public SnapshotQuery pkg(String packageName) {
+    this.packageName = packageName;
+    return this;
+  }
+
+  /**
+   * Require whole text of view to match a pattern.
+   *
+   * @param pattern Text pattern
+   * @return This query
+   */
+  public SnapshotQuery text(final Pattern pattern) {
+    return this.text(new TextCondition() {
+      @Override
+      public boolean matches(CharSequence text) {
+        return text.length() > 0 && pattern.matcher(text).matches();
+      }
+    });
+  }
+
+  /**
+   * Require text of view to fulfill a condition.
+   *
+   * @param condition Text condition
+   * @return This query
+   */
+  public SnapshotQuery text(TextCondition condition) {
+    this.text = condition;
+    return this;
+  }
+
+  /**
+   * Require resource name of view to match a pattern.
+   *
+   * @param pattern Resource name pattern
+   * @return This query
+   */
+  public SnapshotQuery res(Pattern pattern) {
+    this.resourceName = pattern;
+    return this;
+  }
+
+  /**
+   * Require clickability of view.
+   *
+   * @param clickable Whether view can be clicked
+   * @return This query
+   */
+  public SnapshotQuery clickable(boolean clickable) {
+    this.clickable = clickable;
+    return this;
+  }
+
+  /**
+   * Require scrollability of view.
+   *
+   * @param scrollable Whether view can be scrolled
+   * @return This query
+   */
+  public SnapshotQuery scrollable(boolean scrollable) {
+    this.scrollable = scrollable;
+    return this;
+  }
+
+  /**
+   * Require a child of view to match a query.
+   *
+   * @param child Query for child
+   * @return This query
+   */
+  public SnapshotQuery hasChild(SnapshotQuery child) {
+    this.children.add(child);
+    return this;
+  }
+
+  /**
+   * Require a descendant of view to match a query.
+   *
+   * @param descendant Query for descendant
+   * @return This query
+   */
+  public SnapshotQuery hasDescendant(SnapshotQuery descendant) {
+    this.descendants.add(descendant);
+    return this;
+  }
+
+  /**
+   * Check whether a node fulfills all conditions of this query.
+   *
+   * @param node Node to check
+   * @return Whether node matches
+   */
+  public boolean matches(SnapshotNode node) {
+    if (this.className != null && !this.className.equals(node.getClassName())) {
+      return false;
+    }
+    if (this.classPattern != null && !this.classPattern.matcher(node.getClassName()).matches()) {
+      return false;
+    }
+    if (this.packageName != null && !this.packageName.equals(node.getPackageName())) {
+      return false;
+    }
+    if (this.clickable != null && this.clickable != node.isClickable()) {
+      return false;
+    }
+    if (this.scrollable != null && this.scrollable != node.isScrollable()) {
+      return false;
+    }
+    if (this.resourceName != null
+        && !this.resourceName.matcher(node.getResourceName()).matches()) {
+      return false;
+    }
+    if (this.text != null && !this.text.matches(node.getText())) {
+      return false;
+    }
+    for (SnapshotQuery child : this.children) {
+      if (!child.matchesAnyChild(node)) {
+        return false;
+      }
+    }
+    for (SnapshotQuery descendant : this.descendants) {
+      if (!descendant.matchesAnyDescendant(node)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Find all matching nodes in a subtree.
+   *
+   * @param root Root of subtree, checked as well
+   * @return Paths from root to every matching node, in depth-first order
+   */
+  public List<List<SnapshotNode>> findAll(SnapshotNode root) {
+    return this.findAll(Collections.singletonList(root));
+  }
+
+  /**
+   * Find all matching nodes below the end of a path.
+   *
+   * @param path Path to root of subtree, its last node is checked as well
+   * @return Paths from start of given path to every matching node, in depth-first order
+   */
+  public List<List<SnapshotNode>> findAll(List<SnapshotNode> path) {
+    List<List<SnapshotNode>> result = new ArrayList<>();
+    this.collect(new ArrayList<>(path), result, false);
+    return result;
+  }
+
+  /**
+   * Find first matching node in a subtree.
+   *
+   * @param root Root of subtree, checked as well
+   * @return Path from root to matching node or {@code null} if there is none
+   */
+  public List<SnapshotNode> findFirst(SnapshotNode root) {
+    return this.findFirst(Collections.singletonList(root));
+  }
+
+  /**
+   * Find first matching node below the end of a path.
+   *
+   * @param path Path to root of subtree, its last node is checked as well
+   * @return Path from start of given path to matching node or {@code null} if there is none
+   */
+  public List<SnapshotNode> findFirst(List<SnapshotNode> path) {
+    List<List<SnapshotNode>> result = new ArrayList<>();
+    this.collect(new ArrayList<>(path), result, true);
+    return result.isEmpty() ? null : result.get(0);
+  }
+
+  /**
+   * Collect paths to matching nodes in depth-first order.
+   *
+   * @param path Path to current node, restored before returning
+   * @param result Paths found so far
+   * @param first Whether to stop after the first match
+   * @return Whether searching should stop
+   */
+  private boolean collect(List<SnapshotNode> path, List<List<SnapshotNode>> result,
+      boolean first) {
+    SnapshotNode node = path.get(path.size() - 1);
+    if (this.matches(node)) {
+      result.add(new ArrayList<>(path));
+      if (first) {
+        return true;
+      }
+    }
+    for (SnapshotNode child : node.getChildren()) {
+      path.add(child);
+      boolean stop = this.collect(path, result, first);
+      path.remove(path.size() - 1);
+      if (stop) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check whether a child of a node matches this query.
+   *
+   * @param node Parent node
+   * @return Whether a child matches
+   */
+  private boolean matchesAnyChild(SnapshotNode node) {
+    for (SnapshotNode child : node.getChildren()) {
+      if (this.matches(child)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check whether a descendant of a node matches this query.
+   *
+   * @param node Ancestor node
+   * @return Whether a descendant matches
+   */
+  private boolean matchesAnyDescendant(SnapshotNode node) {
+    for (SnapshotNode child : node.getChildren()) {
+      if (this.matches(child) || this.matchesAnyDescendant(child)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
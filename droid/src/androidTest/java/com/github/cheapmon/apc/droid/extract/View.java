@@ -1,19 +1,56 @@
 package com.github.cheapmon.apc.droid.extract;
 
-import android.support.test.espresso.core.deps.guava.base.Optional;
-import android.support.test.uiautomator.UiObject2;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 /**
- * Represent a single view on the page.
+ * Represent a single view on the page.<br><br>
+ *
+ * Every view carries two hashes computed bottom-up from its children, like a Merkle tree: one over
+ * all properties and one over the properties compared by {@link #isEquivalent(Object)}. Views with
+ * different hashes are told apart without descending into their children.<br><br>
+ *
+ * Views are immutable and kept compact, as models hold every page until they are written: texts
+ * and children are plain arrays, names and texts are interned and equal leaves share one instance.
+ * Merging therefore creates new views where something changed.
  */
 class View {
 
+  /**
+   * Pool of class names, package names and texts
+   */
+  private static final Interner<String> STRINGS = new Interner<>();
+
+  /**
+   * Pool of views without children
+   */
+  private static final Interner<View> LEAVES = new Interner<>();
+
+  /**
+   * Text of views without text
+   */
+  private static final String[] NO_TEXT = {""};
+
+  /**
+   * Children of leaves
+   */
+  private static final View[] NO_CHILDREN = {};
+
+  /**
+   * Estimated size of an object header in bytes
+   */
+  private static final int HEADER = 12;
+
+  /**
+   * Estimated size of a reference in bytes
+   */
+  private static final int REFERENCE = 4;
+
   /**
    * Class of this View
    */
@@ -35,52 +72,281 @@ class View {
   private final boolean scrollable;
 
   /**
-   * Collection of possible text contents of this view
+   * Distinct possible text contents of this view
    */
-  private final HashSet<String> text;
+  private final String[] text;
 
   /**
    * Child views of this view
    */
-  private final List<View> children;
+  private final View[] children;
+
+  /**
+   * Hash of all properties and children, consistent with {@link #equals(Object)}
+   */
+  private final long exactHash;
+
+  /**
+   * Hash of properties and children except for texts and contents of scroll containers,
+   * consistent with {@link #isEquivalent(Object)}
+   */
+  private final long equivalenceHash;
+
+  /**
+   * Create new view and compute its hashes.
+   *
+   * @param className Interned class name
+   * @param packageName Interned package name
+   * @param clickable Whether view can be clicked
+   * @param scrollable Whether view can be scrolled
+   * @param text Distinct interned texts
+   * @param children Child views
+   */
+  private View(String className, String packageName, boolean clickable, boolean scrollable,
+      String[] text, View[] children) {
+    this.className = className;
+    this.packageName = packageName;
+    this.clickable = clickable;
+    this.scrollable = scrollable;
+    this.text = text;
+    this.children = children;
+    long shape = combine(combine(className.hashCode(), packageName.hashCode()),
+        (clickable ? 2 : 0) | (scrollable ? 1 : 0));
+    long texts = 0;
+    for (String string : text) {
+      texts += mix(string.hashCode());
+    }
+    long exact = combine(shape, texts);
+    long equivalence = shape;
+    for (View child : children) {
+      exact = combine(exact, child.exactHash);
+      if (!scrollable) {
+        equivalence = combine(equivalence, child.equivalenceHash);
+      }
+    }
+    this.exactHash = mix(combine(exact, children.length));
+    this.equivalenceHash = mix(scrollable ? equivalence : combine(equivalence, children.length));
+  }
 
   /**
-   * Instantiate new View from UiAutomator representation.
+   * Instantiate new View from snapshot of the window hierarchy.
+   *
+   * @param node Snapshot of view
+   * @return View, shared with other pages if it is a leaf
    */
-  View(UiObject2 object) {
-    this.className = Optional.fromNullable(object.getClassName()).or("");
-    this.packageName = Optional.fromNullable(object.getApplicationPackage()).or("");
-    this.text = new HashSet<>();
-    this.text.add(Optional.fromNullable(object.getText()).or(""));
-    this.clickable = object.isClickable();
-    this.scrollable = object.isScrollable();
-    this.children = new ArrayList<>();
-    for (UiObject2 child : object.getChildren()) {
-      this.children.add(new View(child));
+  static View of(SnapshotNode node) {
+    View[] children = NO_CHILDREN;
+    if (!node.getChildren().isEmpty()) {
+      children = new View[node.getChildren().size()];
+      for (int i = 0; i < children.length; i++) {
+        children[i] = of(node.getChildren().get(i));
+      }
     }
+    String[] text = node.getText().isEmpty() ? NO_TEXT
+        : new String[]{STRINGS.intern(node.getText())};
+    return create(STRINGS.intern(node.getClassName()), STRINGS.intern(node.getPackageName()),
+        node.isClickable(), node.isScrollable(), text, children);
+  }
+
+  /**
+   * Create view, leaves are taken from pool.
+   *
+   * @param className Interned class name
+   * @param packageName Interned package name
+   * @param clickable Whether view can be clicked
+   * @param scrollable Whether view can be scrolled
+   * @param text Distinct interned texts
+   * @param children Child views
+   * @return View
+   */
+  private static View create(String className, String packageName, boolean clickable,
+      boolean scrollable, String[] text, View[] children) {
+    View view = new View(className, packageName, clickable, scrollable, text, children);
+    return (children.length == 0) ? LEAVES.intern(view) : view;
   }
 
   /**
    * Merge another view into this view.
    *
    * @param otherView View to merge from
+   * @return Merged view, this view if nothing was added
    */
-  void merge(View otherView) {
-    this.text.addAll(otherView.text);
+  View merge(View otherView) {
+    String[] text = union(this.text, otherView.text);
+    View[] children = this.children;
     if (this.scrollable) {
-      View container = this.children.get(0);
-      View otherContainer = otherView.children.get(0);
-      container.text.addAll(otherContainer.text);
+      View container = this.children[0];
+      View otherContainer = otherView.children[0];
+      Set<View> known = new HashSet<>(Arrays.asList(container.children));
+      List<View> containerChildren = new ArrayList<>(Arrays.asList(container.children));
       for (View child : otherContainer.children) {
-        if (!container.children.contains(child)) {
-          container.children.add(child);
+        if (known.add(child)) {
+          containerChildren.add(child);
         }
       }
+      String[] containerText = union(container.text, otherContainer.text);
+      if (containerText != container.text
+          || containerChildren.size() != container.children.length) {
+        children = this.children.clone();
+        children[0] = create(container.className, container.packageName, container.clickable,
+            container.scrollable, containerText,
+            containerChildren.toArray(new View[containerChildren.size()]));
+      }
     } else {
-      for (int i = 0; i < this.children.size(); i++) {
-        this.children.get(i).merge(otherView.children.get(i));
+      for (int i = 0; i < this.children.length; i++) {
+        View child = this.children[i].merge(otherView.children[i]);
+        if (child != this.children[i]) {
+          if (children == this.children) {
+            children = this.children.clone();
+          }
+          children[i] = child;
+        }
+      }
+    }
+    if (text == this.text && children == this.children) {
+      return this;
+    }
+    return create(this.className, this.packageName, this.clickable, this.scrollable, text,
+        children);
+  }
+
+  /**
+   * Merge another view into a descendant of this view.
+   *
+   * @param path Child indices from this view to descendant
+   * @param depth Number of indices already followed
+   * @param otherView View to merge into descendant
+   * @return Merged view, this view if nothing was added or the descendant does not exist
+   */
+  View mergeAt(int[] path, int depth, View otherView) {
+    if (depth == path.length) {
+      return this.merge(otherView);
+    }
+    int index = path[depth];
+    if (index < 0 || index >= this.children.length) {
+      return this;
+    }
+    View child = this.children[index].mergeAt(path, depth + 1, otherView);
+    if (child == this.children[index]) {
+      return this;
+    }
+    View[] children = this.children.clone();
+    children[index] = child;
+    return create(this.className, this.packageName, this.clickable, this.scrollable, this.text,
+        children);
+  }
+
+  /**
+   * Unite two sets of texts.
+   *
+   * @param text Distinct texts
+   * @param otherText Distinct texts to add
+   * @return United texts, the first array if nothing was added
+   */
+  private static String[] union(String[] text, String[] otherText) {
+    String[] result = text;
+    int size = text.length;
+    for (String string : otherText) {
+      if (!contains(result, size, string)) {
+        if (result == text) {
+          result = Arrays.copyOf(text, text.length + otherText.length);
+        }
+        result[size++] = string;
+      }
+    }
+    return (result == text) ? text : Arrays.copyOf(result, size);
+  }
+
+  /**
+   * Check whether a text occurs in the beginning of an array.
+   *
+   * @param text Texts
+   * @param size Number of texts to check
+   * @param string Text to look for
+   * @return Whether text occurs
+   */
+  private static boolean contains(String[] text, int size, String string) {
+    for (int i = 0; i < size; i++) {
+      if (text[i].equals(string)) {
+        return true;
       }
     }
+    return false;
+  }
+
+  /**
+   * Get hash of properties and children except for texts and contents of scroll containers.<br><br>
+   *
+   * Equivalent views have the same hash. The hash does not change when views are merged.
+   *
+   * @return Equivalence hash
+   */
+  long equivalenceHash() {
+    return this.equivalenceHash;
+  }
+
+  /**
+   * Estimate memory retained by this view and its children.
+   *
+   * @param seen Objects already counted, shared objects are counted once
+   * @return Estimated size in bytes
+   */
+  long footprint(Set<Object> seen) {
+    if (!seen.add(this)) {
+      return 0;
+    }
+    long size = HEADER + 4 * REFERENCE + 2 + 2 * Long.SIZE / Byte.SIZE;
+    if (seen.add(this.text)) {
+      size += HEADER + 4 + REFERENCE * this.text.length;
+    }
+    for (String string : this.text) {
+      size += footprint(string, seen);
+    }
+    size += footprint(this.className, seen) + footprint(this.packageName, seen);
+    if (seen.add(this.children)) {
+      size += HEADER + 4 + REFERENCE * this.children.length;
+    }
+    for (View child : this.children) {
+      size += child.footprint(seen);
+    }
+    return size;
+  }
+
+  /**
+   * Estimate memory retained by a string.
+   *
+   * @param string String
+   * @param seen Objects already counted
+   * @return Estimated size in bytes, 0 if counted before
+   */
+  private static long footprint(String string, Set<Object> seen) {
+    if (!seen.add(string)) {
+      return 0;
+    }
+    return HEADER + REFERENCE + 4 + HEADER + 4 + 2 * string.length();
+  }
+
+  /**
+   * Combine hash with next value, depending on order.
+   *
+   * @param hash Hash so far
+   * @param value Next value
+   * @return Combined hash
+   */
+  private static long combine(long hash, long value) {
+    return hash * 0x9E3779B97F4A7C15L + value;
+  }
+
+  /**
+   * Spread bits of a value over the whole hash.
+   *
+   * @param value Value
+   * @return Mixed value
+   */
+  private static long mix(long value) {
+    value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+    value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return value ^ (value >>> 33);
   }
 
   /**
@@ -104,7 +370,7 @@ class View {
         builder.append(string).append(" ");
       }
     }
-    if (this.children.size() <= 0 && builder.length() > 0) {
+    if (this.children.length <= 0 && builder.length() > 0) {
       builder.append("\n");
     } else {
       for (View childView : this.children) {
@@ -126,7 +392,11 @@ class View {
     view.setAttribute("package", this.packageName);
     view.setAttribute("clickable", String.valueOf(this.clickable));
     view.setAttribute("scrollable", String.valueOf(this.scrollable));
-    view.setAttribute("text", this.text.stream().collect(Collectors.joining(", ")));
+    StringBuilder text = new StringBuilder();
+    for (String string : this.text) {
+      text.append((text.length() > 0) ? ", " : "").append(string);
+    }
+    view.setAttribute("text", text.toString());
     for (View childView : this.children) {
       view.appendChild(childView.toElement(document));
     }
@@ -136,7 +406,8 @@ class View {
   /**
    * Determine whether this View is the same as another.<br><br>
    *
-   * Two Views are equal when their properties and children are equal.
+   * Two Views are equal when their properties, sets of texts and children are equal. Views with
+   * different hashes are never compared in depth.
    *
    * @param obj View to check for equality
    * @return View is the same
@@ -147,22 +418,41 @@ class View {
       return false;
     }
     View otherView = (View) obj;
-    if (this.children.size() != otherView.children.size()) {
+    if (this == otherView) {
+      return true;
+    }
+    if (this.exactHash != otherView.exactHash
+        || this.children.length != otherView.children.length
+        || this.text.length != otherView.text.length) {
       return false;
     }
-    for (int i = 0; i < this.children.size(); i++) {
-      if (this.children.get(i).equals(otherView.children.get(i))) {
+    for (int i = 0; i < this.children.length; i++) {
+      if (this.children[i].equals(otherView.children[i])) {
         continue;
       }
       return false;
     }
-    return this.className.contentEquals(otherView.className) &&
-        this.packageName.contentEquals(otherView.packageName) &&
-        this.text.containsAll(otherView.text) &&
+    for (String string : otherView.text) {
+      if (!contains(this.text, this.text.length, string)) {
+        return false;
+      }
+    }
+    return this.className.equals(otherView.className) &&
+        this.packageName.equals(otherView.packageName) &&
         this.clickable == (otherView.clickable) &&
         this.scrollable == (otherView.scrollable);
   }
 
+  /**
+   * Get hash consistent with {@link #equals(Object)}.
+   *
+   * @return Hash code
+   */
+  @Override
+  public int hashCode() {
+    return (int) (this.exactHash ^ (this.exactHash >>> 32));
+  }
+
   /**
    * Determine whether this view is equivalent to another.<br><br>
    *
@@ -177,18 +467,21 @@ class View {
       return false;
     }
     View otherView = (View) obj;
-    boolean content = this.className.contentEquals(otherView.className) &&
-        this.packageName.contentEquals(otherView.packageName) &&
+    if (this.equivalenceHash != otherView.equivalenceHash) {
+      return false;
+    }
+    boolean content = this.className.equals(otherView.className) &&
+        this.packageName.equals(otherView.packageName) &&
         this.clickable == otherView.clickable &&
         this.scrollable == otherView.scrollable;
     if (this.scrollable && otherView.scrollable) {
       return content;
     } else {
-      if (this.children.size() != otherView.children.size()) {
+      if (this.children.length != otherView.children.length) {
         return false;
       }
-      for (int i = 0; i < this.children.size(); i++) {
-        if (this.children.get(i).isEquivalent(otherView.children.get(i))) {
+      for (int i = 0; i < this.children.length; i++) {
+        if (this.children[i].isEquivalent(otherView.children[i])) {
           continue;
         }
         return false;
@@ -110,6 +110,21 @@ public class GooglePlayWizard {
     return !g.has("warningMessage");
   }
 
+  /**
+   * Get version code of an installed application.
+   *
+   * @param id Application id
+   * @return Version code or -1 if the app is not installed
+   */
+  public static long version(String id) {
+    try {
+      return InstrumentationRegistry.getContext().getPackageManager()
+          .getPackageInfo(id, 0).versionCode;
+    } catch (PackageManager.NameNotFoundException e) {
+      return -1;
+    }
+  }
+
   /**
    * Check if an app is already installed on this device.<br><br>
    *
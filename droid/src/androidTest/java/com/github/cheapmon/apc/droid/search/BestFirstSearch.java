@@ -0,0 +1,258 @@
+package com.github.cheapmon.apc.droid.search;
+
+import android.support.test.uiautomator.StaleObjectException;
+import android.support.test.uiautomator.UiObject2;
+import com.github.cheapmon.apc.droid.extract.Model;
+import com.github.cheapmon.apc.droid.extract.Page;
+import com.github.cheapmon.apc.droid.extract.SnapshotNode;
+import com.github.cheapmon.apc.droid.extract.SnapshotQuery;
+import com.github.cheapmon.apc.droid.util.DroidException;
+import com.github.cheapmon.apc.droid.util.DroidSelector;
+import com.github.cheapmon.apc.droid.util.ExtractionHelper;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Search an app for a policy by clicking the most promising views first.<br><br>
+ *
+ * All clickable views found so far form the frontier. Every view is scored by navigation keywords
+ * in its own text, in texts of its descendants and in its resource name, views on deeper pages
+ * are penalized. Views with equal scores are clicked in order of discovery, so without any
+ * keyword this search behaves like breadth first search.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class BestFirstSearch implements SearchAlgorithm {
+
+  /**
+   * Score of a keyword in text or description of a view
+   */
+  private static final double TEXT_WEIGHT = 4;
+
+  /**
+   * Score of a keyword in text or description of a descendant of a view
+   */
+  private static final double DESCENDANT_WEIGHT = 2;
+
+  /**
+   * Score of a keyword in resource name of a view
+   */
+  private static final double RESOURCE_WEIGHT = 1;
+
+  /**
+   * Penalty per click from start of the app to the page of a view
+   */
+  private static final double DEPTH_PENALTY = 0.5;
+
+  /**
+   * Maximum number of scroll gestures performed on one container
+   */
+  private static final int SCROLL_MAX = 3;
+
+  /**
+   * Number of views added to the frontier in this run, used to break ties
+   */
+  private int discovered;
+
+  /**
+   * Search for policy.
+   *
+   * @param id Application identification
+   * @param budget Budget for this app
+   * @return Policy text
+   * @throws DroidException Capturing start page fails
+   */
+  @Override
+  public String run(String id, SearchBudget budget) throws DroidException {
+    ExtractionHelper e = new ExtractionHelper(id, budget);
+    PriorityQueue<Candidate> frontier = new PriorityQueue<>();
+    this.discovered = 0;
+    e.start();
+    Model model = new Model(id, e.getDisplayBounds());
+    Page page = e.getPage(SearchHelper.getPolicyScorer());
+    e.setPosition(page.getPathNode());
+    this.expand(e, page, frontier);
+    while (!frontier.isEmpty()) {
+      Candidate candidate = frontier.poll();
+      try {
+        e.navigate(candidate.page.getPathNode());
+        e.click(e.find(candidate.selector));
+        Page newPage = e.getPage(SearchHelper.getPolicyScorer());
+        String txt = newPage.dumpText();
+        if (SearchHelper.isPolicy(txt)) {
+          return txt;
+        }
+        newPage.addToPath(candidate.page, candidate.selector);
+        e.setPosition(newPage.getPathNode());
+        if (model.add(newPage, e.getActivityName())) {
+          this.expand(e, newPage, frontier);
+        }
+      } catch (DroidException | IndexOutOfBoundsException | NullPointerException
+          | StaleObjectException ignored) {
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Add clickable views of a page to the frontier, including those only visible after scrolling.
+   *
+   * @param e Helper showing the page
+   * @param page Page to expand
+   * @param frontier Frontier to add views to
+   * @throws DroidException Capturing layout fails
+   */
+  private void expand(ExtractionHelper e, Page page, PriorityQueue<Candidate> frontier)
+      throws DroidException {
+    e.navigate(page.getPathNode());
+    int depth = page.getPathNode().getDepth() + 1;
+    SnapshotNode root = e.getRootSnapshot();
+    SnapshotQuery clickable = new SnapshotQuery().clickable(true);
+    this.offer(e, page, clickable.findAll(root), 0, depth, frontier);
+    List<UiObject2> scrollContainer = new ArrayList<>();
+    for (List<SnapshotNode> path : new SnapshotQuery().scrollable(true).findAll(root)) {
+      try {
+        scrollContainer.add(e.resolve(path));
+      } catch (IndexOutOfBoundsException | StaleObjectException ignored) {
+      }
+    }
+    for (UiObject2 cont : scrollContainer) {
+      try {
+        for (int i = 0; i < SCROLL_MAX; i++) {
+          boolean canScroll = e.scroll(cont);
+          if (!canScroll) {
+            break;
+          }
+          root = e.getRootSnapshot();
+          List<List<SnapshotNode>> views = new ArrayList<>();
+          for (List<SnapshotNode> scrollPath : new SnapshotQuery().scrollable(true).findAll(root)) {
+            for (List<SnapshotNode> path : clickable.findAll(scrollPath)) {
+              if (path.size() > scrollPath.size()) {
+                views.add(path);
+              }
+            }
+          }
+          this.offer(e, page, views, i + 1, depth, frontier);
+        }
+      } catch (NullPointerException | StaleObjectException ignored) {
+      }
+    }
+  }
+
+  /**
+   * Score clickable views of one snapshot and add them to the frontier.
+   *
+   * @param e Helper showing the page
+   * @param page Page of views
+   * @param paths Paths from snapshot of root view to views
+   * @param offset Scroll offset of views
+   * @param depth Number of clicks from start of the app to the page reached by clicking a view
+   * @param frontier Frontier to add views to
+   */
+  private void offer(ExtractionHelper e, Page page, List<List<SnapshotNode>> paths, int offset,
+      int depth, PriorityQueue<Candidate> frontier) {
+    List<List<DroidSelector>> selectors = e.getSelectors(paths, offset);
+    for (int k = 0; k < paths.size(); k++) {
+      List<SnapshotNode> path = paths.get(k);
+      double score = score(path.get(path.size() - 1), SearchHelper.getNavigation())
+          - DEPTH_PENALTY * depth;
+      frontier.add(new Candidate(page, selectors.get(k), score, this.discovered++));
+    }
+  }
+
+  /**
+   * Score a view by navigation keywords.
+   *
+   * @param node Snapshot of view
+   * @param keywords Navigation keywords
+   * @return Score, 0 if no keyword occurs
+   */
+  static double score(SnapshotNode node, NavigationMatcher keywords) {
+    double score = 0;
+    if (keywords.matches(node.getText()) || keywords.matches(node.getDescription())) {
+      score += TEXT_WEIGHT;
+    }
+    if (containsKeyword(node, keywords)) {
+      score += DESCENDANT_WEIGHT;
+    }
+    String resourceName = node.getResourceName();
+    if (keywords.matches(resourceName.substring(resourceName.indexOf('/') + 1))) {
+      score += RESOURCE_WEIGHT;
+    }
+    return score;
+  }
+
+  /**
+   * Check whether text or description of a descendant contains a keyword.
+   *
+   * @param node Snapshot of view
+   * @param keywords Navigation keywords
+   * @return Whether a keyword occurs
+   */
+  private static boolean containsKeyword(SnapshotNode node, NavigationMatcher keywords) {
+    for (SnapshotNode child : node.getChildren()) {
+      if (keywords.matches(child.getText()) || keywords.matches(child.getDescription())
+          || containsKeyword(child, keywords)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Clickable view in the frontier.
+   */
+  private static class Candidate implements Comparable<Candidate> {
+
+    /**
+     * Page the view is shown on
+     */
+    private final Page page;
+
+    /**
+     * Selector of view
+     */
+    private final List<DroidSelector> selector;
+
+    /**
+     * Score of view, higher is more promising
+     */
+    private final double score;
+
+    /**
+     * Order of discovery
+     */
+    private final int sequence;
+
+    /**
+     * Create new candidate.
+     *
+     * @param page Page the view is shown on
+     * @param selector Selector of view
+     * @param score Score of view
+     * @param sequence Order of discovery
+     */
+    Candidate(Page page, List<DroidSelector> selector, double score, int sequence) {
+      this.page = page;
+      this.selector = selector;
+      this.score = score;
+      this.sequence = sequence;
+    }
+
+    /**
+     * Order candidates by descending score, then by discovery.
+     *
+     * @param other Other candidate
+     * @return Comparison result
+     */
+    @Override
+    public int compareTo(Candidate other) {
+      int byScore = Double.compare(other.score, this.score);
+      return (byScore != 0) ? byScore : Integer.compare(this.sequence, other.sequence);
+    }
+
+  }
+
+}
@@ -1,15 +1,50 @@
 package com.github.cheapmon.apc.droid.search;
 
 import com.github.cheapmon.apc.droid.extract.Page;
+import com.github.cheapmon.apc.droid.util.DroidException;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 import java.util.List;
 
 /**
- * Search an app for a policy applying depth first search.
+ * Search an app for a policy applying depth first search.<br><br>
+ *
+ * Pages found last are expanded first, so the app mostly moves one page back or one page deeper
+ * between clicks, which is done by back navigation instead of restarting the app. Depth and number
+ * of clicks are limited, as the search would otherwise get lost in deep branches.
  *
  * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com>cheapmon</a>
  */
 public class DepthFirstSearch extends QueueBasedSearch {
 
+  /**
+   * Maximum number of clicks from start of the app to a page whose views are clicked
+   */
+  private static final int MAX_DEPTH = 6;
+
+  /**
+   * Maximum number of views clicked per app
+   */
+  private static final int MAX_CLICKS = 300;
+
+  /**
+   * Create depth first search.
+   */
+  public DepthFirstSearch() {
+    super(MAX_DEPTH);
+  }
+
+  /**
+   * Search for policy with the budget narrowed to {@link #MAX_CLICKS} clicks.
+   *
+   * @param id Application identification
+   * @param budget Budget for this app
+   * @return Policy text
+   */
+  @Override
+  public String run(String id, SearchBudget budget) throws DroidException {
+    return super.run(id, budget.limit(MAX_CLICKS));
+  }
+
   /**
    * Add new pages to front of queue.
    *
@@ -22,8 +57,4 @@ public class DepthFirstSearch extends QueueBasedSearch {
     }
   }
 
-  @Override
-  public String run(String id) {
-    return null;
-  }
 }
@@ -0,0 +1,191 @@
+package com.github.cheapmon.apc.droid.search;
+
+import com.github.cheapmon.apc.droid.extract.SnapshotQuery.TextCondition;
+import com.github.cheapmon.apc.droid.util.DroidException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Match texts against navigation keywords of one or more languages.<br><br>
+ *
+ * Keywords are loaded from packs bundled as resources, one file per locale with one keyword per
+ * line. All keywords are compiled into one {@link KeywordAutomaton}, so matching a text takes
+ * linear time no matter how many languages are loaded.<br><br>
+ *
+ * Matchers can be used as text condition of a {@code SnapshotQuery}. For UiAutomator selectors,
+ * which only accept regular expressions, the keywords are also available as a pattern. Keywords
+ * are factored by common prefixes there, so only keywords starting with the current character are
+ * tried at every position.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class NavigationMatcher implements TextCondition {
+
+  /**
+   * Resource path of keyword packs, relative to this class
+   */
+  private static final String PACKS = "keywords/%s.txt";
+
+  /**
+   * Distinct lower case keywords
+   */
+  private final String[] keywords;
+
+  /**
+   * Keywords compiled into automaton
+   */
+  private final KeywordAutomaton automaton;
+
+  /**
+   * Keywords compiled into pattern for selectors, created on first use
+   */
+  private Pattern pattern;
+
+  /**
+   * Compile keywords.
+   *
+   * @param keywords Keywords, case is ignored
+   */
+  public NavigationMatcher(Collection<String> keywords) {
+    Set<String> distinct = new LinkedHashSet<>();
+    for (String keyword : keywords) {
+      String trimmed = keyword.trim().toLowerCase(Locale.ROOT);
+      if (!trimmed.isEmpty()) {
+        distinct.add(trimmed);
+      }
+    }
+    this.keywords = distinct.toArray(new String[0]);
+    this.automaton = new KeywordAutomaton(this.keywords);
+  }
+
+  /**
+   * Load keyword packs of locales.
+   *
+   * @param locales Language codes, e.g. {@code de} or {@code en}
+   * @return New matcher
+   * @throws DroidException Pack does not exist or cannot be read
+   */
+  public static NavigationMatcher load(String... locales) throws DroidException {
+    List<String> keywords = new ArrayList<>();
+    for (String locale : locales) {
+      String name = String.format(PACKS, locale.trim());
+      InputStream in = NavigationMatcher.class.getResourceAsStream(name);
+      if (in == null) {
+        throw new DroidException(String.format("No keyword pack for locale '%s'", locale));
+      }
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(in, StandardCharsets.UTF_8))) {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          if (!line.startsWith("#")) {
+            keywords.add(line);
+          }
+        }
+      } catch (IOException ex) {
+        throw new DroidException(String.format("Reading keyword pack %s failed", name), ex);
+      }
+    }
+    return new NavigationMatcher(keywords);
+  }
+
+  /**
+   * Check whether text contains a navigation keyword.
+   *
+   * @param text Text to check, may be {@code null}
+   * @return Whether a keyword occurs
+   */
+  @Override
+  public boolean matches(CharSequence text) {
+    return text != null && this.automaton.containsAny(text);
+  }
+
+  /**
+   * Get keywords as regular expression matching every text which contains one of them.
+   *
+   * @return Pattern for {@code BySelector.text(Pattern)}
+   */
+  public synchronized Pattern toPattern() {
+    if (this.pattern == null) {
+      Node root = new Node();
+      for (String keyword : this.keywords) {
+        root.add(keyword, 0);
+      }
+      String regex = (this.keywords.length == 0) ? "(?!)" : root.toRegex();
+      this.pattern = Pattern.compile(String.format(".*?%s.*", regex),
+          Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+    }
+    return this.pattern;
+  }
+
+  /**
+   * Node of keyword trie used to build the pattern.
+   */
+  private static class Node {
+
+    /**
+     * Children by next character
+     */
+    private final Map<Character, Node> children = new TreeMap<>();
+
+    /**
+     * Whether a keyword ends here
+     */
+    private boolean end;
+
+    /**
+     * Add rest of keyword below this node.
+     *
+     * @param keyword Keyword
+     * @param index Index of next character
+     */
+    void add(String keyword, int index) {
+      if (this.end) {
+        return;
+      }
+      if (index == keyword.length()) {
+        this.end = true;
+        this.children.clear();
+        return;
+      }
+      Node child = this.children.get(keyword.charAt(index));
+      if (child == null) {
+        child = new Node();
+        this.children.put(keyword.charAt(index), child);
+      }
+      child.add(keyword, index + 1);
+    }
+
+    /**
+     * Build regular expression for all keywords below this node. Keywords extending another
+     * keyword are left out, they cannot change whether a text contains a keyword.
+     *
+     * @return Regular expression
+     */
+    String toRegex() {
+      if (this.end) {
+        return "";
+      }
+      List<String> branches = new ArrayList<>();
+      for (Map.Entry<Character, Node> child : this.children.entrySet()) {
+        char c = child.getKey();
+        branches.add((Character.isLetterOrDigit(c) ? String.valueOf(c) : "\\" + c)
+            + child.getValue().toRegex());
+      }
+      return (branches.size() == 1) ? branches.get(0)
+          : String.format("(?:%s)", String.join("|", branches));
+    }
+
+  }
+
+}
@@ -8,13 +8,15 @@ import com.github.cheapmon.apc.droid.search.strategy.SmallMenuStrategy;
 import com.github.cheapmon.apc.droid.search.strategy.TextViewStrategy;
 import com.github.cheapmon.apc.droid.util.DroidException;
 import com.github.cheapmon.apc.droid.util.DroidLogger;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Search an app for a policy using optimized strategies.<br><br>
  *
- * Search is based on different strategies.
+ * Search is based on different strategies. If none of them finds a policy, the remaining budget
+ * is spent on breadth first search.
  *
  * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
  */
@@ -29,17 +31,18 @@ public class OptimizedSearch implements SearchAlgorithm {
    * Run optimized search.
    *
    * @param id Application identification
+   * @param budget Budget for this app
    * @return Policy text
    * @throws DroidException Strategy instantiation fails
    */
   @Override
-  public String run(String id) throws DroidException {
+  public String run(String id, SearchBudget budget) throws DroidException {
     DroidLogger.log(id);
     this.init();
     for (Class<? extends SearchStrategy> strategy : this.strategies) {
       try {
         DroidLogger.log(String.format("* %s", strategy.getSimpleName()));
-        Page page = strategy.newInstance().search(id);
+        Page page = strategy.newInstance().search(id, budget);
         if (page != null) {
           DroidLogger.log("-> Found text!");
           return page.dumpText();
@@ -48,8 +51,8 @@ public class OptimizedSearch implements SearchAlgorithm {
         throw new DroidException("Search strategy could not be loaded", ex);
       }
     }
-    // TODO: Add BFS as fallback.
-    return null;
+    DroidLogger.log("* BreadthFirstSearch");
+    return new BreadthFirstSearch().run(id, budget);
   }
 
   /**
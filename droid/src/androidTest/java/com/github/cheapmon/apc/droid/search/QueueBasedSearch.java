@@ -7,6 +7,7 @@ import com.github.cheapmon.apc.droid.extract.Page;
 import com.github.cheapmon.apc.droid.util.DroidException;
 import com.github.cheapmon.apc.droid.util.DroidSelector;
 import com.github.cheapmon.apc.droid.util.ExtractionHelper;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -23,39 +24,68 @@ abstract class QueueBasedSearch implements SearchAlgorithm {
    */
   final LinkedList<Page> pages = new LinkedList<>();
 
+  /**
+   * Maximum number of clicks from start of the app to a page whose views are clicked
+   */
+  private final int maxDepth;
+
+  /**
+   * Create search without depth limit.
+   */
+  QueueBasedSearch() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create search with depth limit.
+   *
+   * @param maxDepth Maximum number of clicks from start of the app to a page whose views are
+   * clicked
+   */
+  QueueBasedSearch(int maxDepth) {
+    this.maxDepth = maxDepth;
+  }
+
   /**
    * Search for policy.
    *
    * @param id Application identification
+   * @param budget Budget for this app
    * @return Policy text
    */
   @Override
-  public String run(String id) throws DroidException {
-    ExtractionHelper e = new ExtractionHelper(id);
+  public String run(String id, SearchBudget budget) throws DroidException {
+    ExtractionHelper e = new ExtractionHelper(id, budget);
+    this.pages.clear();
     e.start();
     Model model = new Model(id, e.getDisplayBounds());
-    Page page = e.getPage();
+    Page page = e.getPage(SearchHelper.getPolicyScorer());
     this.pages.add(page);
+    e.setPosition(page.getPathNode());
     while (this.pages.size() > 0) {
       page = this.pages.remove();
+      if (page.getPathNode().getDepth() >= this.maxDepth) {
+        continue;
+      }
       try {
-        e.start(page.getPath());
+        e.navigate(page.getPathNode());
       } catch (IndexOutOfBoundsException | NullPointerException | StaleObjectException ex) {
         continue;
       }
-      List<List<DroidSelector>> list = e.getClickable();
+      List<List<DroidSelector>> list = e.getClickable(SearchHelper.getSampler());
       List<Page> newPages = new ArrayList<>(list.size());
       for (List<DroidSelector> d : list) {
         try {
-          e.start(page.getPath());
+          e.navigate(page.getPathNode());
           UiObject2 clickView = e.find(d);
           e.click(clickView);
-          Page newPage = e.getPage();
+          Page newPage = e.getPage(SearchHelper.getPolicyScorer());
           String txt = newPage.dumpText();
           if (SearchHelper.isPolicy(txt)) {
             return txt;
           }
           newPage.addToPath(page, d);
+          e.setPosition(newPage.getPathNode());
           boolean isNew;
           try {
             isNew = model.add(newPage, e.getActivityName());
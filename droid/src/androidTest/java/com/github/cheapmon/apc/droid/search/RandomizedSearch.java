@@ -1,11 +1,11 @@
 package com.github.cheapmon.apc.droid.search;
 
 import android.support.test.uiautomator.By;
-import android.support.test.uiautomator.Direction;
 import android.support.test.uiautomator.StaleObjectException;
 import android.support.test.uiautomator.UiObject2;
 import com.github.cheapmon.apc.droid.util.DroidException;
 import com.github.cheapmon.apc.droid.util.ExtractionHelper;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 import java.util.List;
 import java.util.Random;
 
@@ -25,20 +25,21 @@ public class RandomizedSearch implements SearchAlgorithm {
    * Search policy.
    *
    * @param id Application identification
+   * @param budget Budget for this app
    * @return Policy text
    * @throws DroidException Activity name can't be found
    */
   @Override
-  public String run(String id) throws DroidException {
+  public String run(String id, SearchBudget budget) throws DroidException {
     Random r = new Random();
-    ExtractionHelper e = new ExtractionHelper(id);
+    ExtractionHelper e = new ExtractionHelper(id, budget);
     e.start();
     e.waitForUpdate();
     for (int i = 0; i < CLICK_MAX; i++) {
       try {
         List<UiObject2> scrollList = e.getRoot().findObjects(By.scrollable(true));
         if (scrollList.size() > 0) {
-          scrollList.get(r.nextInt(scrollList.size())).scroll(Direction.DOWN, r.nextFloat());
+          e.scroll(scrollList.get(r.nextInt(scrollList.size())), r.nextFloat());
         }
         List<UiObject2> clickList = e.getRoot().findObjects(By.clickable(true));
         if (clickList.size() > 0) {
@@ -46,7 +47,7 @@ public class RandomizedSearch implements SearchAlgorithm {
         }
         e.waitForUpdate();
         if (e.getActivityName().startsWith(id)) {
-          String txt = e.getPage().dumpText();
+          String txt = e.getPage(SearchHelper.getPolicyScorer()).dumpText();
           if (SearchHelper.isPolicy(txt)) {
             return txt;
           }
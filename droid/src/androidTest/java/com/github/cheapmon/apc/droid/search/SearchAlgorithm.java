@@ -1,6 +1,8 @@
 package com.github.cheapmon.apc.droid.search;
 
+import com.github.cheapmon.apc.droid.util.BudgetExhaustedException;
 import com.github.cheapmon.apc.droid.util.DroidException;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 
 /**
  * Search an app for a policy text.
@@ -13,9 +15,11 @@ public interface SearchAlgorithm {
    * Search policy.
    *
    * @param id Application identification
+   * @param budget Budget for this app
    * @return Policy text
    * @throws DroidException Search algorithm failed
+   * @throws BudgetExhaustedException Budget is used up
    */
-  String run(String id) throws DroidException;
+  String run(String id, SearchBudget budget) throws DroidException;
 
 }
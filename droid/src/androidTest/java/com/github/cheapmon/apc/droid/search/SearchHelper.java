@@ -1,8 +1,8 @@
 package com.github.cheapmon.apc.droid.search;
 
+import com.github.cheapmon.apc.droid.util.ClickableSampler;
+import com.github.cheapmon.apc.droid.util.DroidException;
 import java.util.HashMap;
-import java.util.regex.Pattern;
-import org.apache.commons.lang3.StringUtils;
 
 /**
  * Utility for search algorithms.
@@ -22,18 +22,45 @@ public class SearchHelper {
   };
 
   /**
-   * Keywords to look for in the UI
+   * Minimum number of words of a policy
    */
-  private static final String[] NAVIGATION_KEYWORDS = {
-      "daten", "data", "privat", "privacy", "hilfe", "help", "support", "info", "einstellung",
-      "setting", "über", "about", "impressum", "service", "nutzung", "terms", "bedingung",
-      "rechtlich", "legal"
+  private static final int WORD_THRESHOLD = 500;
+
+  /**
+   * Minimum ratio of keyword matches to words of a policy
+   */
+  private static final double RATIO_THRESHOLD = 0.04;
+
+  /**
+   * Policy keywords compiled into one automaton, one scorer per thread as scorers reuse their
+   * buffers
+   */
+  private static final ThreadLocal<PolicyScorer> POLICY_SCORER = new ThreadLocal<PolicyScorer>() {
+    @Override
+    protected PolicyScorer initialValue() {
+      return new PolicyScorer(PRIVACY_POLICY_KEYWORDS, WORD_THRESHOLD, RATIO_THRESHOLD);
+    }
   };
 
   /**
-   * Navigation keywords compiled into regex pattern
+   * Locales of navigation keywords used if none are configured
+   */
+  private static final String[] DEFAULT_LOCALES = {"de", "en"};
+
+  /**
+   * Number of equivalent views clicked if none is configured
    */
-  public static final Pattern NAVIGATION_REGEX = getNavRegex();
+  private static final int DEFAULT_SAMPLE_SIZE = 3;
+
+  /**
+   * Matcher for navigation keywords to look for in the UI
+   */
+  private static NavigationMatcher navigation;
+
+  /**
+   * Number of equivalent views clicked, e.g. of rows of a list, 0 to click all
+   */
+  private static int sampleSize = DEFAULT_SAMPLE_SIZE;
 
   /**
    * Get algorithm class from given label.
@@ -47,27 +74,62 @@ public class SearchHelper {
     algorithms.put("DFS", DepthFirstSearch.class);
     algorithms.put("OS", OptimizedSearch.class);
     algorithms.put("RS", RandomizedSearch.class);
+    algorithms.put("BEST", BestFirstSearch.class);
     return algorithms.get(algorithm);
   }
 
   /**
-   * Compile keywords to regex.
+   * Load navigation keywords of given locales.
+   *
+   * @param locales Language codes
+   * @throws DroidException Keyword pack cannot be loaded
+   */
+  public static synchronized void loadNavigation(String... locales) throws DroidException {
+    navigation = NavigationMatcher.load(locales);
+  }
+
+  /**
+   * Get matcher for navigation keywords. Keywords of the default locales are loaded if none have
+   * been loaded before.
    *
-   * @return Regex pattern
+   * @return Navigation matcher
    */
-  private static Pattern getNavRegex() {
-    StringBuilder result = new StringBuilder(".*(");
-    for (int i = 0; i < NAVIGATION_KEYWORDS.length; i++) {
-      String keyword = NAVIGATION_KEYWORDS[i];
-      String firstLetter = keyword.substring(0, 1);
-      String rest = keyword.substring(1);
-      result.append(String.format("[%s%s]%s", firstLetter.toUpperCase(), firstLetter, rest));
-      if (i < NAVIGATION_KEYWORDS.length - 1) {
-        result.append("|");
+  public static synchronized NavigationMatcher getNavigation() {
+    if (navigation == null) {
+      try {
+        navigation = NavigationMatcher.load(DEFAULT_LOCALES);
+      } catch (DroidException ex) {
+        throw new IllegalStateException("Default keyword packs missing", ex);
       }
     }
-    result.append(").*");
-    return Pattern.compile(result.toString());
+    return navigation;
+  }
+
+  /**
+   * Set number of equivalent views clicked.
+   *
+   * @param size Sample size, 0 to click all views
+   */
+  public static synchronized void setSampleSize(int size) {
+    sampleSize = size;
+  }
+
+  /**
+   * Get sampler for clickable views, configured by sample size and navigation keywords.
+   *
+   * @return Clickable sampler
+   */
+  public static synchronized ClickableSampler getSampler() {
+    return new ClickableSampler(sampleSize, getNavigation());
+  }
+
+  /**
+   * Get scorer deciding whether texts are policies.
+   *
+   * @return Policy scorer
+   */
+  public static PolicyScorer getPolicyScorer() {
+    return POLICY_SCORER.get();
   }
 
   /**
@@ -80,18 +142,6 @@ public class SearchHelper {
    * @return Whether the text is a privacy policy
    */
   public static boolean isPolicy(String text) {
-    final double WORD_THRESHOLD = 500;
-    final double RATIO_THRESHOLD = 0.04;
-    double words = StringUtils.split(text, " ").length;
-    if (words > WORD_THRESHOLD) {
-      double matches = 0;
-      for (String keyword : PRIVACY_POLICY_KEYWORDS) {
-        matches += StringUtils.countMatches(text.toLowerCase(), keyword);
-        if (matches / words >= RATIO_THRESHOLD) {
-          return true;
-        }
-      }
-    }
-    return false;
+    return POLICY_SCORER.get().isPolicy(text);
   }
 }
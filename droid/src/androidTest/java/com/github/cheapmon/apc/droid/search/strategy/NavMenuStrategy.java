@@ -1,17 +1,19 @@
 package com.github.cheapmon.apc.droid.search.strategy;
 
-import android.support.test.uiautomator.By;
-import android.support.test.uiautomator.Direction;
 import android.support.test.uiautomator.StaleObjectException;
 import android.support.test.uiautomator.UiObject2;
 import android.widget.Button;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import com.github.cheapmon.apc.droid.extract.Page;
+import com.github.cheapmon.apc.droid.extract.SnapshotNode;
+import com.github.cheapmon.apc.droid.extract.SnapshotQuery;
+import com.github.cheapmon.apc.droid.search.NavigationMatcher;
 import com.github.cheapmon.apc.droid.search.SearchHelper;
 import com.github.cheapmon.apc.droid.util.DroidException;
 import com.github.cheapmon.apc.droid.util.DroidSelector;
 import com.github.cheapmon.apc.droid.util.ExtractionHelper;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -32,12 +34,13 @@ public class NavMenuStrategy implements SearchStrategy {
    * Search policy.
    *
    * @param id Application identification
+   * @param budget Budget for this app
    * @return Policy text
    * @throws DroidException Reading activity name failed
    */
   @Override
-  public Page search(String id) throws DroidException {
-    this.e = new ExtractionHelper(id);
+  public Page search(String id, SearchBudget budget) throws DroidException {
+    this.e = new ExtractionHelper(id, budget);
     this.e.start();
     LinkedList<Page> pages = new LinkedList<>();
     this.findButtonsOnFirstPage(pages);
@@ -48,15 +51,14 @@ public class NavMenuStrategy implements SearchStrategy {
    * Find button views on first page of app and add new pages to model.
    *
    * @param pages List to add new pages to
+   * @throws DroidException Capturing layout fails
    */
-  private void findButtonsOnFirstPage(LinkedList<Page> pages) {
-    List<UiObject2> buttons = this.e.getRoot().findObjects(By.clazz(Button.class));
-    buttons.addAll(this.e.getRoot().findObjects(By.clazz(ImageButton.class)));
-    buttons.addAll(this.e.getRoot().findObjects(By.clazz(ImageView.class)));
-    List<List<DroidSelector>> buttonSelectors = new ArrayList<>();
-    for (UiObject2 obj : buttons) {
-      buttonSelectors.add(this.e.getSelector(obj, 0));
-    }
+  private void findButtonsOnFirstPage(LinkedList<Page> pages) throws DroidException {
+    List<List<DroidSelector>> buttonSelectors = this.e.get(
+        new SnapshotQuery().clazz(Button.class),
+        new SnapshotQuery().clazz(ImageButton.class),
+        new SnapshotQuery().clazz(ImageView.class)
+    );
     for (List<DroidSelector> selector : buttonSelectors) {
       try {
         this.e.start();
@@ -99,7 +101,7 @@ public class NavMenuStrategy implements SearchStrategy {
           if (SearchHelper.isPolicy(newPage.dumpText())) {
             return newPage;
           }
-          if (!this.e.getActivityName().startsWith(id) || page.getPath().size() > 4) {
+          if (!this.e.getActivityName().startsWith(id) || page.getPathNode().getDepth() > 4) {
             continue;
           }
           newPage.addToPath(page, d);
@@ -116,39 +118,40 @@ public class NavMenuStrategy implements SearchStrategy {
   }
 
   /**
-   * Get clickable views containing navigation keywords in current layout.
+   * Get clickable views containing navigation keywords in current layout.<br><br>
+   *
+   * Every scroll position is captured once and searched locally, only scroll containers are
+   * resolved in the live layout.
    *
    * @return View selectors
+   * @throws DroidException Capturing layout fails
    */
-  private List<List<DroidSelector>> getNavViews() {
+  private List<List<DroidSelector>> getNavViews() throws DroidException {
     final int SCROLL_MAX = 3;
-    List<List<DroidSelector>> list = new ArrayList<>();
-    List<UiObject2> foundObjects = this.e.getRoot().findObjects(
-        By.clickable(true).text(SearchHelper.NAVIGATION_REGEX)
-    );
-    foundObjects.addAll(this.e.getRoot().findObjects(
-        By.clickable(true).hasDescendant(By.text(SearchHelper.NAVIGATION_REGEX))
-    ));
-    for (UiObject2 obj : foundObjects) {
-      list.add(this.e.getSelector(obj, 0));
+    NavigationMatcher keywords = SearchHelper.getNavigation();
+    SnapshotQuery labelled = new SnapshotQuery().clickable(true).text(keywords);
+    SnapshotQuery containing = new SnapshotQuery().clickable(true)
+        .hasDescendant(new SnapshotQuery().text(keywords));
+    SnapshotNode root = this.e.getRootSnapshot();
+    List<List<DroidSelector>> list = this.e.get(root, labelled, 0);
+    list.addAll(this.e.get(root, containing, 0));
+    List<UiObject2> scrollContainer = new ArrayList<>();
+    for (List<SnapshotNode> path : new SnapshotQuery().scrollable(true).findAll(root)) {
+      try {
+        scrollContainer.add(this.e.resolve(path));
+      } catch (IndexOutOfBoundsException | StaleObjectException ignored) {
+      }
     }
-    List<UiObject2> scrollContainer = this.e.getRoot().findObjects(By.scrollable(true));
     for (UiObject2 cont : scrollContainer) {
       try {
         for (int i = 0; i < SCROLL_MAX; i++) {
-          boolean canScroll = cont.scroll(Direction.DOWN, 1);
+          boolean canScroll = this.e.scroll(cont);
           if (!canScroll) {
             break;
           }
-          foundObjects = this.e.getRoot().findObjects(
-              By.clickable(true).text(SearchHelper.NAVIGATION_REGEX)
-          );
-          foundObjects.addAll(this.e.getRoot().findObjects(
-              By.clickable(true).hasDescendant(By.text(SearchHelper.NAVIGATION_REGEX))
-          ));
-          for (UiObject2 obj : foundObjects) {
-            list.add(this.e.getSelector(obj, i + 1));
-          }
+          root = this.e.getRootSnapshot();
+          list.addAll(this.e.get(root, labelled, i + 1));
+          list.addAll(this.e.get(root, containing, i + 1));
         }
       } catch (NullPointerException | StaleObjectException ignored) {
       }
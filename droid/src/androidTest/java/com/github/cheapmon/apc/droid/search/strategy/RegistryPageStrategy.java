@@ -1,12 +1,13 @@
 package com.github.cheapmon.apc.droid.search.strategy;
 
-import android.support.test.uiautomator.By;
 import android.support.test.uiautomator.StaleObjectException;
 import android.support.test.uiautomator.UiObject2;
 import com.github.cheapmon.apc.droid.extract.Page;
+import com.github.cheapmon.apc.droid.extract.SnapshotQuery;
 import com.github.cheapmon.apc.droid.util.DroidException;
 import com.github.cheapmon.apc.droid.util.DroidSelector;
 import com.github.cheapmon.apc.droid.util.ExtractionHelper;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -18,22 +19,27 @@ import java.util.regex.Pattern;
  */
 public class RegistryPageStrategy implements SearchStrategy {
 
+  /**
+   * Maximum number of attempts when the layout changes during search
+   */
+  private static final int MAX_ATTEMPTS = 3;
+
   /**
    * Search policy.
    *
    * @param id Application identification
+   * @param budget Budget for this app
    * @return Policy text
    * @throws DroidException Text view search failed
    */
   @Override
-  public Page search(String id) throws DroidException {
-    boolean finished = false;
-    while (!finished) {
+  public Page search(String id, SearchBudget budget) throws DroidException {
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
       try {
-        ExtractionHelper e = new ExtractionHelper(id);
+        ExtractionHelper e = new ExtractionHelper(id, budget);
         e.start();
         e.waitForUpdate();
-        List<List<DroidSelector>> buttons = e.get(By.clickable(true).text(
+        List<List<DroidSelector>> buttons = e.get(new SnapshotQuery().clickable(true).text(
             Pattern.compile(".*(([Ss]ign up)|([Rr]egister)|([Rr]egistrieren)|([Ll]ogin)).*")
         ));
         for (List<DroidSelector> list : buttons) {
@@ -42,7 +48,7 @@ public class RegistryPageStrategy implements SearchStrategy {
             e.click(obj);
             List<List<DroidSelector>> p = new ArrayList<>(new ArrayList<>());
             p.add(list);
-            Page result = new TextViewStrategy().search(id, p);
+            Page result = new TextViewStrategy().search(id, budget, p);
             if (result != null) {
               return result;
             } else {
@@ -50,7 +56,7 @@ public class RegistryPageStrategy implements SearchStrategy {
             }
           }
         }
-        finished = true;
+        return null;
       } catch (StaleObjectException | ArrayIndexOutOfBoundsException ignored) {
       }
     }
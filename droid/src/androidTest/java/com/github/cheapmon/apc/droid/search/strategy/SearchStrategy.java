@@ -1,7 +1,9 @@
 package com.github.cheapmon.apc.droid.search.strategy;
 
 import com.github.cheapmon.apc.droid.extract.Page;
+import com.github.cheapmon.apc.droid.util.BudgetExhaustedException;
 import com.github.cheapmon.apc.droid.util.DroidException;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 
 /**
  * Strategy for finding a policy in an app.
@@ -14,9 +16,11 @@ public interface SearchStrategy {
    * Search policy.
    *
    * @param id Application identification
+   * @param budget Budget shared with other strategies for this app
    * @return Policy text
    * @throws DroidException Search fails
+   * @throws BudgetExhaustedException Budget is used up
    */
-  Page search(String id) throws DroidException;
+  Page search(String id, SearchBudget budget) throws DroidException;
 
 }
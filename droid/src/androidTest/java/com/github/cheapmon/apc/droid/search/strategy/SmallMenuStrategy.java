@@ -1,7 +1,5 @@
 package com.github.cheapmon.apc.droid.search.strategy;
 
-import android.support.test.uiautomator.By;
-import android.support.test.uiautomator.BySelector;
 import android.support.test.uiautomator.StaleObjectException;
 import android.support.test.uiautomator.UiObject2;
 import android.widget.Button;
@@ -10,10 +8,13 @@ import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.ListView;
 import com.github.cheapmon.apc.droid.extract.Page;
+import com.github.cheapmon.apc.droid.extract.SnapshotNode;
+import com.github.cheapmon.apc.droid.extract.SnapshotQuery;
 import com.github.cheapmon.apc.droid.search.SearchHelper;
 import com.github.cheapmon.apc.droid.util.DroidException;
 import com.github.cheapmon.apc.droid.util.DroidSelector;
 import com.github.cheapmon.apc.droid.util.ExtractionHelper;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -34,16 +35,19 @@ public class SmallMenuStrategy implements SearchStrategy {
    * Search policy
    *
    * @param id Application identification
+   * @param budget Budget for this app
    * @return Policy text
    */
   @Override
-  public Page search(String id) throws DroidException {
-    this.e = new ExtractionHelper(id);
+  public Page search(String id, SearchBudget budget) throws DroidException {
+    this.e = new ExtractionHelper(id, budget);
     this.e.start();
     this.skipPanel();
-    List<List<DroidSelector>> buttons = this.e.get(By.clazz(Button.class).clickable(true));
-    buttons.addAll(this.e.get(By.clazz(ImageButton.class).clickable(true)));
-    buttons.addAll(this.e.get(By.clazz(ImageView.class).clickable(true)));
+    List<List<DroidSelector>> buttons = this.e.get(
+        new SnapshotQuery().clazz(Button.class).clickable(true),
+        new SnapshotQuery().clazz(ImageButton.class).clickable(true),
+        new SnapshotQuery().clazz(ImageView.class).clickable(true)
+    );
     for (List<DroidSelector> list : buttons) {
       try {
         List<List<DroidSelector>> path = new ArrayList<>();
@@ -58,23 +62,25 @@ public class SmallMenuStrategy implements SearchStrategy {
         if (!this.e.getActivityName().startsWith(id)) {
           continue;
         }
-        obj = this.e.getRoot().findObject(
-            By.clazz(FrameLayout.class)
-                .hasChild(By.clazz(FrameLayout.class).hasChild(By.clazz(ListView.class)))
-        );
-        if (obj == null) {
+        List<SnapshotNode> menu = new SnapshotQuery().clazz(FrameLayout.class).hasChild(
+            new SnapshotQuery().clazz(FrameLayout.class)
+                .hasChild(new SnapshotQuery().clazz(ListView.class))
+        ).findFirst(this.e.getRootSnapshot());
+        if (menu == null) {
           continue;
         }
         Page page;
-        obj = obj.findObject(By.text(Pattern.compile(".*[Dd]aten.*")));
+        SnapshotQuery privacy = new SnapshotQuery().text(Pattern.compile(".*[Dd]aten.*"));
+        obj = this.e.resolve(privacy.findFirst(menu));
         if (obj == null) {
           this.e.start(path);
-          obj = this.e.getRoot().findObject(By.text(Pattern.compile(".*[Hh]ilfe|[Üü]ber.*")));
+          obj = this.e.resolve(new SnapshotQuery().text(Pattern.compile(".*[Hh]ilfe|[Üü]ber.*"))
+              .findFirst(this.e.getRootSnapshot()));
           if (obj == null) {
             continue;
           }
           this.e.click(obj);
-          obj = this.e.getRoot().findObject(By.text(Pattern.compile(".*[Dd]aten.*")));
+          obj = this.e.resolve(privacy.findFirst(this.e.getRootSnapshot()));
           if (obj == null) {
             continue;
           }
@@ -91,7 +97,8 @@ public class SmallMenuStrategy implements SearchStrategy {
             return page;
           }
         }
-      } catch (IndexOutOfBoundsException | StaleObjectException | NullPointerException ignored) {
+      } catch (DroidException | IndexOutOfBoundsException | StaleObjectException
+          | NullPointerException ignored) {
       }
     }
     return null;
@@ -102,15 +109,17 @@ public class SmallMenuStrategy implements SearchStrategy {
    */
   private void skipPanel() {
     try {
-      BySelector parentPanel = By.res(Pattern.compile(".*:id/parentPanel"));
-      if (this.e.getRoot().hasObject(parentPanel)) {
-        UiObject2 button = this.e.getRoot().findObject(parentPanel)
-            .findObject(By.clazz(Button.class));
+      List<SnapshotNode> panel = new SnapshotQuery().res(Pattern.compile(".*:id/parentPanel"))
+          .findFirst(this.e.getRootSnapshot());
+      if (panel != null) {
+        UiObject2 button = this.e.resolve(
+            new SnapshotQuery().clazz(Button.class).findFirst(panel)
+        );
         if (button != null) {
           this.e.click(button);
         }
       }
-    } catch (StaleObjectException ignored) {
+    } catch (DroidException | IndexOutOfBoundsException | StaleObjectException ignored) {
     }
   }
 
@@ -1,15 +1,16 @@
 package com.github.cheapmon.apc.droid.search.strategy;
 
-import android.support.test.uiautomator.By;
 import android.support.test.uiautomator.StaleObjectException;
 import android.support.test.uiautomator.UiObject2;
 import android.view.View;
 import android.widget.TextView;
 import com.github.cheapmon.apc.droid.extract.Page;
+import com.github.cheapmon.apc.droid.extract.SnapshotQuery;
 import com.github.cheapmon.apc.droid.search.SearchHelper;
 import com.github.cheapmon.apc.droid.util.DroidException;
 import com.github.cheapmon.apc.droid.util.DroidSelector;
 import com.github.cheapmon.apc.droid.util.ExtractionHelper;
+import com.github.cheapmon.apc.droid.util.SearchBudget;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -32,25 +33,28 @@ public class TextViewStrategy implements SearchStrategy {
    * Search for keywords and click.
    *
    * @param id Application identification
+   * @param budget Budget for this app
    * @return Policy page
    */
   @Override
-  public Page search(String id) throws DroidException {
-    ExtractionHelper e = new ExtractionHelper(id);
+  public Page search(String id, SearchBudget budget) throws DroidException {
+    ExtractionHelper e = new ExtractionHelper(id, budget);
     e.start(this.path);
     try {
-      UiObject2 obj = e.getRoot().findObject(
-          By.clazz(TextView.class).clickable(true).text(SearchHelper.NAVIGATION_REGEX)
+      UiObject2 obj = e.resolve(
+          new SnapshotQuery().clazz(TextView.class).clickable(true)
+              .text(SearchHelper.getNavigation()).findFirst(e.getRootSnapshot())
       );
       if (obj != null) {
         e.click(obj);
-        obj = e.getRoot().findObject(
-            By.clazz(View.class).clickable(true).text(Pattern.compile(".*(Daten|Privacy).*"))
+        obj = e.resolve(
+            new SnapshotQuery().clazz(View.class).clickable(true)
+                .text(Pattern.compile(".*(Daten|Privacy).*")).findFirst(e.getRootSnapshot())
         );
         if (obj != null) {
           e.click(obj);
         }
-        Page page = new Page(e.getRoot());
+        Page page = new Page(e.getRootSnapshot());
         if (SearchHelper.isPolicy(page.dumpText())) {
           return page;
         } else {
@@ -66,12 +70,14 @@ public class TextViewStrategy implements SearchStrategy {
    * Search keywords, starting from a certain beginning point.
    *
    * @param id Application identification
+   * @param budget Budget shared with other strategies for this app
    * @param path Path to beginning point
    * @return Policy page
    */
-  public Page search(String id, List<List<DroidSelector>> path) throws DroidException {
+  public Page search(String id, SearchBudget budget, List<List<DroidSelector>> path)
+      throws DroidException {
     this.path = path;
-    return this.search(id);
+    return this.search(id, budget);
   }
 
 }
@@ -0,0 +1,92 @@
+package com.github.cheapmon.apc.droid.util;
+
+import android.app.UiAutomation;
+import android.app.UiAutomation.OnAccessibilityEventListener;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.view.accessibility.AccessibilityEvent;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Accessibility events of the device.<br><br>
+ *
+ * {@link UiAutomation} accepts only one listener, so this source registers itself once and
+ * forwards every event to all of its own listeners. Events are stamped with
+ * {@link SystemClock#uptimeMillis()}.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class AccessibilityEventSource implements EventSource {
+
+  /**
+   * Source registered with the device, {@code null} before first use
+   */
+  private static AccessibilityEventSource instance;
+
+  /**
+   * Listeners events are forwarded to
+   */
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Register with UI automation of the device.
+   *
+   * @param automation UI automation of the device
+   */
+  private AccessibilityEventSource(UiAutomation automation) {
+    automation.setOnAccessibilityEventListener(new OnAccessibilityEventListener() {
+      @Override
+      public void onAccessibilityEvent(AccessibilityEvent event) {
+        for (Listener listener : AccessibilityEventSource.this.listeners) {
+          listener.onEvent(event.getEventType(), event.getPackageName(), event.getClassName(),
+              event.getEventTime());
+        }
+      }
+    });
+  }
+
+  /**
+   * Get source of this device.
+   *
+   * @return Event source
+   */
+  public static synchronized AccessibilityEventSource getInstance() {
+    if (instance == null) {
+      instance = new AccessibilityEventSource(
+          InstrumentationRegistry.getInstrumentation().getUiAutomation());
+    }
+    return instance;
+  }
+
+  /**
+   * Register listener for all events of this device.
+   *
+   * @param listener Listener to register
+   */
+  @Override
+  public void addListener(Listener listener) {
+    this.listeners.add(listener);
+  }
+
+  /**
+   * Unregister listener.
+   *
+   * @param listener Listener to unregister
+   */
+  @Override
+  public void removeListener(Listener listener) {
+    this.listeners.remove(listener);
+  }
+
+  /**
+   * Get time since boot, as used by accessibility events.
+   *
+   * @return Current time in milliseconds
+   */
+  @Override
+  public long now() {
+    return SystemClock.uptimeMillis();
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.github.cheapmon.apc.droid.util;
+
+import android.content.ComponentName;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.support.test.InstrumentationRegistry;
+import android.view.accessibility.AccessibilityEvent;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Track the activity in the foreground.<br><br>
+ *
+ * Every window state change names the class of the new window. Only classes that are activities
+ * according to the package manager are tracked, so dialogs and popups keep the activity below.
+ * Names are formatted like in {@code dumpsys}, e.g. {@code com.example/.MainActivity}.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class ActivityTracker {
+
+  /**
+   * Tracker of this device, {@code null} before first use
+   */
+  private static ActivityTracker instance;
+
+  /**
+   * Package manager to look up activities with
+   */
+  private final PackageManager packageManager;
+
+  /**
+   * Whether a component is an activity, by component name
+   */
+  private final Map<String, Boolean> isActivity = new HashMap<>();
+
+  /**
+   * Name of activity in the foreground, {@code null} if unknown
+   */
+  private volatile String activityName;
+
+  /**
+   * Create new tracker.
+   *
+   * @param source Source of events
+   * @param packageManager Package manager to look up activities with
+   */
+  public ActivityTracker(EventSource source, PackageManager packageManager) {
+    this.packageManager = packageManager;
+    source.addListener(new EventSource.Listener() {
+      @Override
+      public void onEvent(int type, CharSequence packageName, CharSequence className,
+          long time) {
+        if (type == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED && packageName != null
+            && className != null) {
+          ActivityTracker.this.onWindowStateChanged(packageName.toString(),
+              className.toString());
+        }
+      }
+    });
+  }
+
+  /**
+   * Get tracker of this device.
+   *
+   * @return Activity tracker
+   */
+  public static synchronized ActivityTracker getInstance() {
+    if (instance == null) {
+      instance = new ActivityTracker(AccessibilityEventSource.getInstance(),
+          InstrumentationRegistry.getContext().getPackageManager());
+    }
+    return instance;
+  }
+
+  /**
+   * Get activity in the foreground.
+   *
+   * @return Activity name, {@code null} if no activity was shown since the last reset
+   */
+  public String getActivityName() {
+    return this.activityName;
+  }
+
+  /**
+   * Forget the current activity, e.g. before launching an app.
+   */
+  public void reset() {
+    this.activityName = null;
+  }
+
+  /**
+   * Track new window if it is an activity.
+   *
+   * @param packageName Package of window
+   * @param className Class of window
+   */
+  private void onWindowStateChanged(String packageName, String className) {
+    ComponentName component = new ComponentName(packageName, className);
+    String name = component.flattenToShortString();
+    Boolean known;
+    synchronized (this.isActivity) {
+      known = this.isActivity.get(name);
+    }
+    if (known == null) {
+      try {
+        this.packageManager.getActivityInfo(component, 0);
+        known = true;
+      } catch (NameNotFoundException ex) {
+        known = false;
+      }
+      synchronized (this.isActivity) {
+        this.isActivity.put(name, known);
+      }
+    }
+    if (known) {
+      this.activityName = name;
+    }
+  }
+
+}
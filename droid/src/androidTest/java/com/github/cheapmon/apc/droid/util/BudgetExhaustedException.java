@@ -0,0 +1,22 @@
+package com.github.cheapmon.apc.droid.util;
+
+/**
+ * Exception thrown when a search has used up its budget.<br><br>
+ *
+ * Unchecked, so it passes through all loops of a search which only skip views that cannot be
+ * found.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class BudgetExhaustedException extends RuntimeException {
+
+  /**
+   * Create new exception. Provide additional message.
+   *
+   * @param message Message about exhausted budget
+   */
+  public BudgetExhaustedException(String message) {
+    super(message);
+  }
+
+}
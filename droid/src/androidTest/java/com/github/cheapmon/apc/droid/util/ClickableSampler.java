@@ -0,0 +1,101 @@
+package com.github.cheapmon.apc.droid.util;
+
+import com.github.cheapmon.apc.droid.extract.SnapshotNode;
+import com.github.cheapmon.apc.droid.extract.SnapshotQuery;
+import com.github.cheapmon.apc.droid.extract.SnapshotQuery.TextCondition;
+import java.util.List;
+
+/**
+ * Group clickable views that are probably equivalent, e.g. rows of a feed or product list.<br><br>
+ *
+ * Views are grouped by their container and their structural signature, i.e. class, resource name
+ * and shape of their subtree. The container is the nearest scrollable ancestor, or the parent if
+ * there is none. Containers are identified by their position in the layout, so views found after
+ * scrolling join the groups of views found before.<br><br>
+ *
+ * Only a sample of each group has to be clicked. Views whose texts contain navigation keywords
+ * are never grouped.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class ClickableSampler {
+
+  /**
+   * Number of views clicked per group, 0 to click all
+   */
+  private final int sampleSize;
+
+  /**
+   * Query for views containing navigation keywords
+   */
+  private final SnapshotQuery keywords;
+
+  /**
+   * Create new sampler.
+   *
+   * @param sampleSize Number of views clicked per group, 0 to click all
+   * @param keywords Navigation keywords, views containing them are always clicked
+   */
+  public ClickableSampler(int sampleSize, TextCondition keywords) {
+    this.sampleSize = sampleSize;
+    this.keywords = new SnapshotQuery().text(keywords);
+  }
+
+  /**
+   * Get number of views clicked per group.
+   *
+   * @return Sample size, 0 if all views are clicked
+   */
+  public int getSampleSize() {
+    return this.sampleSize;
+  }
+
+  /**
+   * Get group of a clickable view.
+   *
+   * @param path Path from snapshot of root view to view
+   * @return Key of group or {@code null} if the view has to be clicked anyway
+   */
+  public String getGroup(List<SnapshotNode> path) {
+    if (this.sampleSize <= 0 || path.size() < 2) {
+      return null;
+    }
+    SnapshotNode node = path.get(path.size() - 1);
+    if (this.keywords.findFirst(node) != null) {
+      return null;
+    }
+    int container = path.size() - 2;
+    for (int i = path.size() - 2; i >= 0; i--) {
+      if (path.get(i).isScrollable()) {
+        container = i;
+        break;
+      }
+    }
+    StringBuilder key = new StringBuilder();
+    for (int i = 0; i < container; i++) {
+      key.append(path.get(i).getChildren().indexOf(path.get(i + 1))).append('/');
+    }
+    key.append('|');
+    this.appendSignature(node, key);
+    return key.toString();
+  }
+
+  /**
+   * Append structural signature of a view and its descendants.
+   *
+   * @param node Snapshot of view
+   * @param signature Signature to append to
+   */
+  private void appendSignature(SnapshotNode node, StringBuilder signature) {
+    signature.append(node.getClassName()).append('#').append(node.getResourceName());
+    if (!node.getChildren().isEmpty()) {
+      signature.append('(');
+      for (SnapshotNode child : node.getChildren()) {
+        this.appendSignature(child, signature);
+        signature.append(',');
+      }
+      signature.append(')');
+    }
+  }
+
+}
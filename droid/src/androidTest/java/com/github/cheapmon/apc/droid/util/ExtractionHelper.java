@@ -12,10 +12,19 @@ import android.support.test.uiautomator.UiDevice;
 import android.support.test.uiautomator.UiObject2;
 import android.support.test.uiautomator.Until;
 import com.github.cheapmon.apc.droid.extract.Page;
+import com.github.cheapmon.apc.droid.extract.PathNode;
+import com.github.cheapmon.apc.droid.extract.SnapshotNode;
+import com.github.cheapmon.apc.droid.extract.SnapshotParser;
+import com.github.cheapmon.apc.droid.extract.SnapshotQuery;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -46,22 +55,114 @@ public class ExtractionHelper {
   private final Intent launchIntent;
 
   /**
-   * Timeout for application loading
+   * Timeout for the window of the application to appear after launch
    */
-  private final int TIMEOUT = 1000;
+  private final int TIMEOUT = 5000;
+
+  /**
+   * Detector for the layout settling after an action
+   */
+  private final SettleDetector settle;
+
+  /**
+   * Tracker of the activity in the foreground
+   */
+  private final ActivityTracker activities;
 
   /**
    * Maximum number of scroll gestures performed on one container
    */
   private static final int SCROLL_MAX = 3;
 
+  /**
+   * Maximum number of scroll gestures performed on one container while the text of a page worth
+   * reading is read
+   */
+  private static final int SCROLL_LIMIT = 50;
+
+  /**
+   * Maximum number of flings to return a container to its beginning
+   */
+  private static final int FLING_MAX = 10;
+
+  /**
+   * Class of drawer layouts, whose content is used as root view
+   */
+  private static final Pattern DRAWER_LAYOUT = Pattern.compile(".*\\.DrawerLayout");
+
+  /**
+   * Settle detector of this device, {@code null} before first use
+   */
+  private static SettleDetector settleDetector;
+
+  /**
+   * Budget charged for clicks and restarts
+   */
+  private final SearchBudget budget;
+
+  /**
+   * Node of path the app is known to show, {@code null} if unknown
+   */
+  private PathNode position;
+
+  /**
+   * Whether a container has been scrolled since the app was started
+   */
+  private boolean scrolled;
+
+  /**
+   * Root view of current screen, {@code null} if not resolved yet
+   */
+  private UiObject2 root;
+
+  /**
+   * Version of window content {@link #root} was resolved at
+   */
+  private long rootVersion;
+
+  /**
+   * Snapshot of root view of current screen, {@code null} if not captured yet
+   */
+  private SnapshotNode rootSnapshot;
+
+  /**
+   * Version of window content {@link #rootSnapshot} was captured at
+   */
+  private long snapshotVersion;
+
+  /**
+   * Get settle detector of this device, shared so measurements carry over between apps.
+   *
+   * @return Settle detector
+   */
+  private static synchronized SettleDetector getSettleDetector() {
+    if (settleDetector == null) {
+      settleDetector = new SettleDetector(AccessibilityEventSource.getInstance(),
+          SettleDetector.DEFAULT_MAX_WAIT);
+    }
+    return settleDetector;
+  }
+
   /**
    * Get new helper for certain application
    *
    * @param applicationID ID of application
    */
   public ExtractionHelper(String applicationID) {
+    this(applicationID, SearchBudget.unlimited());
+  }
+
+  /**
+   * Get new helper for certain application, limited by a budget.
+   *
+   * @param applicationID ID of application
+   * @param budget Budget charged for clicks and restarts
+   */
+  public ExtractionHelper(String applicationID, SearchBudget budget) {
     this.applicationID = applicationID;
+    this.budget = budget;
+    this.settle = getSettleDetector();
+    this.activities = ActivityTracker.getInstance();
     this.device = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
     this.launchContext = InstrumentationRegistry.getContext();
     this.launchIntent = this.launchContext.getPackageManager()
@@ -70,11 +171,20 @@ public class ExtractionHelper {
   }
 
   /**
-   * Start activity from scratch.
+   * Start activity from scratch and wait until its layout has settled.
+   *
+   * @throws BudgetExhaustedException No restarts or time left
    */
   public void start() {
+    this.budget.restart();
+    this.settle.arm();
+    this.activities.reset();
+    this.invalidate();
     this.launchContext.startActivity(this.launchIntent);
     this.device.wait(Until.hasObject(By.pkg(this.applicationID).depth(0)), this.TIMEOUT);
+    this.settle.awaitSettled();
+    this.position = null;
+    this.scrolled = false;
   }
 
   /**
@@ -87,9 +197,96 @@ public class ExtractionHelper {
     UiObject2 obj;
     for (List<DroidSelector> d : path) {
       obj = this.find(d);
+      this.budget.click();
+      this.settle.arm();
+      this.invalidate();
       obj.click();
-      this.waitForUpdate();
+      this.settle.awaitSettled();
+    }
+  }
+
+  /**
+   * Show page of a path node.<br><br>
+   *
+   * If the app is known to show a node of the same path trie, the app is navigated back to the
+   * deepest node both paths share and the remaining elements are clicked from there. The page is
+   * verified on the shared node and on the target. If verification fails or the position is
+   * unknown, the app is started from scratch and the whole path is replayed.
+   *
+   * @param target Node to navigate to
+   */
+  public void navigate(PathNode target) {
+    PathNode from = this.position;
+    PathNode common = (from == null) ? null : from.commonAncestor(target);
+    if (common != null) {
+      try {
+        for (int i = from.getDepth(); i > common.getDepth(); i--) {
+          this.budget.check();
+          this.settle.arm();
+          this.invalidate();
+          this.device.pressBack();
+          this.settle.awaitSettled();
+        }
+        if (common.matches(new Page(this.getRootSnapshot())) && this.resetScroll()) {
+          for (List<DroidSelector> step : target.getPath(common)) {
+            UiObject2 obj = this.find(step);
+            this.budget.click();
+            this.settle.arm();
+            this.invalidate();
+            obj.click();
+            this.settle.awaitSettled();
+          }
+          if (target == common || target.matches(new Page(this.getRootSnapshot()))) {
+            this.position = target;
+            return;
+          }
+        }
+      } catch (DroidException | IndexOutOfBoundsException | NullPointerException
+          | StaleObjectException ignored) {
+      }
+    }
+    this.start(target.getPath());
+    this.position = target;
+  }
+
+  /**
+   * Remember node of path the app shows after clicking an element.
+   *
+   * @param node Node of path, {@code null} if unknown
+   */
+  public void setPosition(PathNode node) {
+    this.position = node;
+  }
+
+  /**
+   * Scroll all containers back to their beginning if anything has been scrolled, so offsets of
+   * selectors apply again.<br><br>
+   *
+   * Every container is flung up until it cannot scroll further. Only if all containers are
+   * verified to be at their beginning, the layout counts as not scrolled again.
+   *
+   * @return Whether all containers are at their beginning, otherwise the app has to be restarted
+   */
+  private boolean resetScroll() {
+    if (!this.scrolled) {
+      return true;
+    }
+    try {
+      for (UiObject2 cont : this.getRoot().findObjects(By.scrollable(true))) {
+        int flings = 0;
+        while (cont.fling(Direction.UP)) {
+          if (++flings >= FLING_MAX) {
+            return false;
+          }
+        }
+      }
+    } catch (StaleObjectException ex) {
+      return false;
+    } finally {
+      this.invalidate();
     }
+    this.scrolled = false;
+    return true;
   }
 
   /**
@@ -102,11 +299,26 @@ public class ExtractionHelper {
   }
 
   /**
-   * Get current activity.
+   * Get current activity.<br><br>
+   *
+   * The activity is known from window events. Only if no activity has been shown since the app
+   * was started, the window manager is asked.
    *
    * @return Activity name
+   * @throws DroidException Activity is unknown and cannot be found by shell command
    */
   public String getActivityName() throws DroidException {
+    String name = this.activities.getActivityName();
+    return (name != null) ? name : this.getFocusedActivity();
+  }
+
+  /**
+   * Get current activity from the window manager.
+   *
+   * @return Activity name
+   * @throws DroidException Shell command fails or shows no activity
+   */
+  private String getFocusedActivity() throws DroidException {
     try {
       String out = this.device.executeShellCommand("dumpsys window windows");
       for (String line : out.split("\n")) {
@@ -125,130 +337,512 @@ public class ExtractionHelper {
   }
 
   /**
-   * Get root view of an applications layout.
+   * Get root view of an applications layout.<br><br>
+   *
+   * The root is resolved once per screen and reused until the window content changes.
    *
    * @return Root view
    */
   public UiObject2 getRoot() {
-    BySelector drawerLayout = By.clazz(Pattern.compile(".*\\.DrawerLayout"));
-    if (this.device.hasObject(drawerLayout)) {
-      if (this.device.findObject(drawerLayout) != null
-          && this.device.findObject(drawerLayout).getChildren().size() > 1) {
-        return this.device.findObject(drawerLayout).getChildren().get(1);
+    long version = this.settle.getVersion();
+    if (this.root == null || this.rootVersion != version) {
+      this.root = this.findRoot();
+      this.rootVersion = version;
+    }
+    return this.root;
+  }
+
+  /**
+   * Resolve root view of an applications layout. If a drawer layout is shown, its content is
+   * used.
+   *
+   * @return Root view
+   */
+  private UiObject2 findRoot() {
+    UiObject2 drawer = this.device.findObject(By.clazz(DRAWER_LAYOUT));
+    if (drawer != null) {
+      List<UiObject2> children = drawer.getChildren();
+      if (children.size() > 1) {
+        return children.get(1);
       }
     }
     return this.device.findObject(By.pkg(this.applicationID).depth(0));
   }
 
   /**
-   * Get page representation of current layout.
+   * Forget root view and snapshot of the current screen, e.g. before an action changes it.
+   */
+  private void invalidate() {
+    this.root = null;
+    this.rootSnapshot = null;
+  }
+
+  /**
+   * Capture all windows currently shown in one call.<br><br>
+   *
+   * Unlike traversing {@link UiObject2} instances, which queries the device for every property of
+   * every view, the whole hierarchy is dumped at once and parsed locally.
+   *
+   * @return Snapshots of window roots
+   * @throws DroidException Dumping hierarchy fails
+   */
+  public List<SnapshotNode> capture() throws DroidException {
+    this.budget.check();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      this.device.dumpWindowHierarchy(out);
+    } catch (IOException ex) {
+      throw new DroidException("Dumping window hierarchy failed", ex);
+    }
+    return SnapshotParser.parse(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  /**
+   * Get snapshot of root view of an applications layout, like {@link #getRoot()}.<br><br>
+   *
+   * The layout is captured once per screen and reused until the window content changes.
    *
+   * @return Root view
+   * @throws DroidException Application is not shown or dumping hierarchy fails
+   */
+  public SnapshotNode getRootSnapshot() throws DroidException {
+    long version = this.settle.getVersion();
+    if (this.rootSnapshot == null || this.snapshotVersion != version) {
+      this.rootSnapshot = this.findRootSnapshot();
+      this.snapshotVersion = version;
+    }
+    return this.rootSnapshot;
+  }
+
+  /**
+   * Capture snapshot of root view of an applications layout.
+   *
+   * @return Root view
+   * @throws DroidException Application is not shown or dumping hierarchy fails
+   */
+  private SnapshotNode findRootSnapshot() throws DroidException {
+    List<SnapshotNode> windows = this.capture();
+    for (SnapshotNode window : windows) {
+      SnapshotNode drawer = window.findByClassSuffix(".DrawerLayout");
+      if (drawer != null && drawer.getChildren().size() > 1) {
+        return drawer.getChildren().get(1);
+      }
+    }
+    for (SnapshotNode window : windows) {
+      if (window.getPackageName().equals(this.applicationID)) {
+        return window;
+      }
+    }
+    throw new DroidException(String.format("%s is not shown", this.applicationID));
+  }
+
+  /**
+   * Get page representation of current layout. Scroll containers are scrolled a few times.
+   *
+   * @return Resulting page
+   * @throws DroidException Capturing layout fails
+   */
+  public Page getPage() throws DroidException {
+    return this.getPage(null);
+  }
+
+  /**
+   * Get page representation of current layout, reading scroll containers until their text is
+   * complete.<br><br>
+   *
+   * After every scroll, only the scrolled container is taken from the capture and merged into the
+   * page. Its text is accumulated without the lines shown before scrolling. A container is
+   * scrolled while it shows new text, until the verdict on its text is settled or the scroll
+   * limit is reached. Only pages whose text is worth reading get the high scroll limit, all
+   * others and pages read without a verdict are scrolled a few times, like before.<br><br>
+   *
+   * Every scroll still captures all windows, as the hierarchy cannot be dumped for a single
+   * container.
+   *
+   * @param verdict Verdict on texts of containers, {@code null} to scroll a fixed number of times
    * @return Resulting page
+   * @throws DroidException Capturing layout fails
    */
-  public Page getPage() {
-    Page page = new Page(this.getRoot());
-    for (UiObject2 cont : this.getRoot().findObjects(By.scrollable(true))) {
+  public Page getPage(TextVerdict verdict) throws DroidException {
+    SnapshotNode root = this.getRootSnapshot();
+    Page page = new Page(root);
+    int limit = (verdict != null && verdict.isWorthReading(getText(root))) ? SCROLL_LIMIT
+        : SCROLL_MAX;
+    for (List<SnapshotNode> path : new SnapshotQuery().scrollable(true).findAll(root)) {
       try {
-        for (int i = 0; i < SCROLL_MAX; i++) {
-          boolean canScroll = cont.scroll(Direction.DOWN, 1);
-          if (!canScroll) {
+        int[] indices = getIndices(path);
+        UiObject2 cont = this.resolve(path);
+        TextAccumulator text = new TextAccumulator();
+        text.add(getLines(path.get(path.size() - 1), new ArrayList<String>()));
+        for (int i = 0; i < limit; i++) {
+          if (verdict != null && verdict.isSettled(text.getText())) {
+            break;
+          }
+          boolean canScroll = this.scroll(cont);
+          SnapshotNode container = getDescendant(this.getRootSnapshot(), indices);
+          if (container == null || !container.isScrollable()) {
+            break;
+          }
+          int added = text.add(getLines(container, new ArrayList<String>()));
+          page.merge(indices, container);
+          if (!canScroll || (verdict != null && added == 0)) {
             break;
           }
-          page.merge(new Page(this.getRoot()));
         }
-      } catch (NullPointerException | StaleObjectException ignored) {
+      } catch (IndexOutOfBoundsException | NullPointerException | StaleObjectException ignored) {
       }
     }
     return page;
   }
 
   /**
-   * Get all clickable views of current layout.
+   * Get child indices along a path.
    *
+   * @param path Path from snapshot of root view to view
+   * @return Index of every node of path but the first among its siblings
+   */
+  private static int[] getIndices(List<SnapshotNode> path) {
+    int[] indices = new int[path.size() - 1];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = path.get(i).getChildren().indexOf(path.get(i + 1));
+    }
+    return indices;
+  }
+
+  /**
+   * Follow child indices from a view.
+   *
+   * @param node Snapshot of view
+   * @param indices Child indices
+   * @return Descendant or {@code null} if it does not exist
+   */
+  private static SnapshotNode getDescendant(SnapshotNode node, int[] indices) {
+    for (int index : indices) {
+      if (index < 0 || index >= node.getChildren().size()) {
+        return null;
+      }
+      node = node.getChildren().get(index);
+    }
+    return node;
+  }
+
+  /**
+   * Get text of a view and its descendants, lines separated like accumulated text.
+   *
+   * @param node Snapshot of view
+   * @return Text
+   */
+  private static CharSequence getText(SnapshotNode node) {
+    StringBuilder text = new StringBuilder();
+    for (String line : getLines(node, new ArrayList<String>())) {
+      text.append(line).append(" \n");
+    }
+    return text;
+  }
+
+  /**
+   * Collect non-empty texts of a view and its descendants in depth-first order.
+   *
+   * @param node Snapshot of view
+   * @param lines Texts collected so far
+   * @return Texts
+   */
+  private static List<String> getLines(SnapshotNode node, List<String> lines) {
+    if (!node.getText().isEmpty()) {
+      lines.add(node.getText());
+    }
+    for (SnapshotNode child : node.getChildren()) {
+      getLines(child, lines);
+    }
+    return lines;
+  }
+
+  /**
+   * Get page representation of the layout currently shown, even if it belongs to another
+   * application, e.g. after a link opened a browser.
+   *
+   * @return Resulting page
+   * @throws DroidException Nothing is shown or capturing layout fails
+   */
+  public Page getPageFromAnyApp() throws DroidException {
+    List<SnapshotNode> windows = this.capture();
+    if (windows.isEmpty()) {
+      throw new DroidException("No window is shown");
+    }
+    return new Page(windows.get(0));
+  }
+
+  /**
+   * Click view and wait until the layout has changed.
+   *
+   * @param obj View to click
+   * @throws BudgetExhaustedException No clicks or time left
+   */
+  public void click(UiObject2 obj) {
+    this.budget.click();
+    this.settle.arm();
+    this.invalidate();
+    obj.click();
+    this.settle.awaitSettled();
+    this.position = null;
+  }
+
+  /**
+   * Scroll container down by its full height.
+   *
+   * @param cont Scrollable container
+   * @return Whether the container can scroll further
+   */
+  public boolean scroll(UiObject2 cont) {
+    return this.scroll(cont, 1);
+  }
+
+  /**
+   * Scroll container down.
+   *
+   * @param cont Scrollable container
+   * @param percent Distance to scroll, relative to height of container
+   * @return Whether the container can scroll further
+   */
+  public boolean scroll(UiObject2 cont, float percent) {
+    this.scrolled = true;
+    this.invalidate();
+    return cont.scroll(Direction.DOWN, percent);
+  }
+
+  /**
+   * Get all clickable views of current layout.<br><br>
+   *
+   * Selectors of all views are computed from one snapshot per scroll position.
+   *
+   * @return List of view selectors
+   * @throws DroidException Capturing layout fails
+   */
+  public List<List<DroidSelector>> getClickable() throws DroidException {
+    return this.getClickable(null);
+  }
+
+  /**
+   * Get a sample of clickable views of current layout, like {@link #getClickable()}.<br><br>
+   *
+   * Of every group of equivalent views, only as many as the sample size are returned, in order of
+   * appearance. Groups span all scroll positions of a container.
+   *
+   * @param sampler Sampler grouping views, {@code null} to get all views
    * @return List of view selectors
+   * @throws DroidException Capturing layout fails
    */
-  public List<List<DroidSelector>> getClickable() {
-    List<List<DroidSelector>> list = this.get(By.clickable(true));
-    List<UiObject2> scrollContainer = this.getRoot().findObjects(By.scrollable(true));
-    for (UiObject2 cont : scrollContainer) {
+  public List<List<DroidSelector>> getClickable(ClickableSampler sampler)
+      throws DroidException {
+    SnapshotQuery clickable = new SnapshotQuery().clickable(true);
+    SnapshotQuery scrollable = new SnapshotQuery().scrollable(true);
+    Map<String, Integer> taken = new HashMap<>();
+    SnapshotNode root = this.getRootSnapshot();
+    List<List<DroidSelector>> list = this.getSelectors(
+        this.sample(clickable.findAll(root), sampler, taken), 0);
+    List<List<SnapshotNode>> containers = scrollable.findAll(root);
+    for (int k = 0; k < containers.size(); k++) {
       try {
+        UiObject2 cont = this.resolve(containers.get(k));
         for (int i = 0; i < SCROLL_MAX; i++) {
-          boolean canScroll = cont.scroll(Direction.DOWN, 1);
+          boolean canScroll = this.scroll(cont);
           if (!canScroll) {
             break;
           }
-          for (UiObject2 clickView : cont.findObjects(By.clickable(true))) {
-            list.add(this.getSelector(clickView, i));
+          List<List<SnapshotNode>> scrolledContainers = scrollable.findAll(this.getRootSnapshot());
+          if (k >= scrolledContainers.size()) {
+            break;
+          }
+          List<SnapshotNode> container = scrolledContainers.get(k);
+          List<List<SnapshotNode>> views = new ArrayList<>();
+          for (List<SnapshotNode> path : clickable.findAll(container)) {
+            if (path.size() > container.size()) {
+              views.add(path);
+            }
           }
+          list.addAll(this.getSelectors(this.sample(views, sampler, taken), i));
         }
-      } catch (NullPointerException | StaleObjectException ignored) {
+      } catch (IndexOutOfBoundsException | NullPointerException | StaleObjectException ignored) {
       }
     }
     return list;
   }
 
   /**
-   * Get certain views of current layout.
+   * Drop views whose group has already been sampled.
    *
-   * @param selector Selector of views
-   * @return List of view selectors
+   * @param paths Paths from snapshot of root view to views
+   * @param sampler Sampler grouping views, {@code null} to keep all views
+   * @param taken Number of views taken so far, by group
+   * @return Paths of views to keep
    */
-  public List<List<DroidSelector>> get(BySelector selector) {
-    List<UiObject2> clickViews = this.getRoot().findObjects(selector);
+  private List<List<SnapshotNode>> sample(List<List<SnapshotNode>> paths,
+      ClickableSampler sampler, Map<String, Integer> taken) {
+    if (sampler == null) {
+      return paths;
+    }
+    List<List<SnapshotNode>> kept = new ArrayList<>();
+    for (List<SnapshotNode> path : paths) {
+      String group = sampler.getGroup(path);
+      if (group == null) {
+        kept.add(path);
+        continue;
+      }
+      Integer count = taken.get(group);
+      int n = (count == null) ? 0 : count;
+      if (n < sampler.getSampleSize()) {
+        kept.add(path);
+        taken.put(group, n + 1);
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Get certain views of current layout.<br><br>
+   *
+   * The layout is captured once, views and their selectors are computed from the snapshot.
+   *
+   * @param queries Queries for views
+   * @return List of view selectors, in order of queries
+   * @throws DroidException Capturing layout fails
+   */
+  public List<List<DroidSelector>> get(SnapshotQuery... queries) throws DroidException {
+    SnapshotNode root = this.getRootSnapshot();
     List<List<DroidSelector>> list = new ArrayList<>();
-    for (UiObject2 clickView : clickViews) {
-      list.add(this.getSelector(clickView, 0));
+    for (SnapshotQuery query : queries) {
+      list.addAll(this.get(root, query, 0));
     }
     return list;
   }
 
   /**
-   * Get selector for an UI element.
+   * Get certain views of a captured layout.
+   *
+   * @param root Snapshot of root view, as returned by {@link #getRootSnapshot()}
+   * @param query Query for views
+   * @param offset Scroll offset of captured layout
+   * @return List of view selectors
+   */
+  public List<List<DroidSelector>> get(SnapshotNode root, SnapshotQuery query, int offset) {
+    return this.getSelectors(query.findAll(root), offset);
+  }
+
+  /**
+   * Find live element of a view in a captured layout.
+   *
+   * @param path Path from snapshot of root view to view, {@code null} if there is none
+   * @return Element or {@code null} if path is {@code null}
+   */
+  public UiObject2 resolve(List<SnapshotNode> path) {
+    return (path == null) ? null : this.find(this.getSelector(path, 0));
+  }
+
+  /**
+   * Get selector for a view in a captured layout. All positions are computed from the snapshot.
    *
-   * @param obj UI element
+   * @param path Path from snapshot of root view to view
+   * @param offset Scroll offset of view
    * @return Selector for element
    */
-  public List<DroidSelector> getSelector(UiObject2 obj, int offset) {
-    if (obj == null) {
-      return null;
+  public List<DroidSelector> getSelector(List<SnapshotNode> path, int offset) {
+    return this.getSelector(path, offset,
+        new IdentityHashMap<SnapshotNode, Map<String, Map<SnapshotNode, Integer>>>());
+  }
+
+  /**
+   * Get selectors for views in the same captured layout.<br><br>
+   *
+   * Positions are shared between all views, so views matched by the same selector below the
+   * same parent, e.g. rows of a list, are located by one pass over the parent.
+   *
+   * @param paths Paths from snapshot of root view to views
+   * @param offset Scroll offset of views
+   * @return Selectors for elements, in order of paths
+   */
+  public List<List<DroidSelector>> getSelectors(List<List<SnapshotNode>> paths, int offset) {
+    Map<SnapshotNode, Map<String, Map<SnapshotNode, Integer>>> positions =
+        new IdentityHashMap<>();
+    List<List<DroidSelector>> list = new ArrayList<>(paths.size());
+    for (List<SnapshotNode> path : paths) {
+      list.add(this.getSelector(path, offset, positions));
     }
+    return list;
+  }
+
+  /**
+   * Get selector for a view in a captured layout, reusing known positions.
+   *
+   * @param path Path from snapshot of root view to view
+   * @param offset Scroll offset of view
+   * @param positions Positions of views matched by a selector, by parent and selector
+   * @return Selector for element
+   */
+  private List<DroidSelector> getSelector(List<SnapshotNode> path, int offset,
+      Map<SnapshotNode, Map<String, Map<SnapshotNode, Integer>>> positions) {
     LinkedList<DroidSelector> list = new LinkedList<>();
-    BySelector lastSelector = By.clickable(obj.isClickable()).scrollable(obj.isScrollable())
-        .clazz(obj.getClassName()).pkg(obj.getApplicationPackage());
-    Rect lastBounds = obj.getVisibleBounds();
-    obj = obj.getParent();
-    BySelector selector;
-    Rect bounds = obj.getVisibleBounds();
-    String text = obj.getText();
-    while (obj != null && !obj.equals(this.getRoot().getParent())) {
-      if (obj.isScrollable()) {
-        selector = By.clickable(obj.isClickable()).scrollable(true)
-            .clazz(obj.getClassName()).pkg(obj.getApplicationPackage());
-      } else {
-        selector = By.clickable(obj.isClickable()).scrollable(false)
-            .clazz(obj.getClassName()).pkg(obj.getApplicationPackage()).hasChild(lastSelector);
-      }
-      if (obj.findObjects(lastSelector).size() > 1) {
-        for (int i = 0; i < obj.findObjects(lastSelector).size(); i++) {
-          UiObject2 o = obj.findObjects(lastSelector).get(i);
-          if (o.getVisibleBounds().equals(lastBounds)) {
-            // TODO: Only add offset for scrollable element
-            list.addFirst(new DroidSelector(lastSelector, i, offset).setMeta(bounds, text));
-            break;
-          }
-        }
-      } else {
-        list.addFirst(new DroidSelector(lastSelector, 0, offset).setMeta(bounds, text));
+    SnapshotNode node = path.get(path.size() - 1);
+    BySelector lastSelector = By.clickable(node.isClickable()).scrollable(node.isScrollable())
+        .clazz(node.getClassName()).pkg(node.getPackageName());
+    SnapshotQuery lastQuery = new SnapshotQuery().clickable(node.isClickable())
+        .scrollable(node.isScrollable()).clazz(node.getClassName()).pkg(node.getPackageName());
+    for (int i = path.size() - 2; i >= 0; i--) {
+      SnapshotNode parent = path.get(i);
+      int pos = this.getPosition(parent, lastQuery, lastSelector.toString(), node, positions);
+      int[] b = parent.getBounds();
+      list.addFirst(new DroidSelector(lastSelector, pos, offset)
+          .setMeta(new Rect(b[0], b[1], b[2], b[3]), parent.getText()));
+      BySelector selector = By.clickable(parent.isClickable())
+          .scrollable(parent.isScrollable()).clazz(parent.getClassName())
+          .pkg(parent.getPackageName());
+      SnapshotQuery query = new SnapshotQuery().clickable(parent.isClickable())
+          .scrollable(parent.isScrollable()).clazz(parent.getClassName())
+          .pkg(parent.getPackageName());
+      if (!parent.isScrollable()) {
+        selector.hasChild(lastSelector);
+        query.hasChild(lastQuery);
       }
       lastSelector = selector;
-      lastBounds = obj.getVisibleBounds();
-      bounds = obj.getVisibleBounds();
-      text = obj.getText();
-      obj = obj.getParent();
+      lastQuery = query;
+      node = parent;
     }
     return list;
   }
 
+  /**
+   * Get position of a view among all views below a parent matched by a selector.
+   *
+   * @param parent Parent view
+   * @param query Query equivalent to selector
+   * @param key String representation of selector
+   * @param node View to locate
+   * @param positions Positions computed so far, by parent and selector
+   * @return Position of view, 0 if it does not match
+   */
+  private int getPosition(SnapshotNode parent, SnapshotQuery query, String key, SnapshotNode node,
+      Map<SnapshotNode, Map<String, Map<SnapshotNode, Integer>>> positions) {
+    Map<String, Map<SnapshotNode, Integer>> byQuery = positions.get(parent);
+    if (byQuery == null) {
+      byQuery = new HashMap<>();
+      positions.put(parent, byQuery);
+    }
+    Map<SnapshotNode, Integer> matches = byQuery.get(key);
+    if (matches == null) {
+      matches = new IdentityHashMap<>();
+      List<List<SnapshotNode>> candidates = query.findAll(parent);
+      for (int k = 0; k < candidates.size(); k++) {
+        List<SnapshotNode> candidate = candidates.get(k);
+        SnapshotNode match = candidate.get(candidate.size() - 1);
+        if (!matches.containsKey(match)) {
+          matches.put(match, k);
+        }
+      }
+      byQuery.put(key, matches);
+    }
+    Integer pos = matches.get(node);
+    return (pos == null) ? 0 : pos;
+  }
+
   /**
    * Find element in layout by its properties.
    *
@@ -261,7 +855,7 @@ public class ExtractionHelper {
       obj = obj.findObjects(selector.getSelector()).get(selector.getPos());
       if (obj.isScrollable()) {
         for (int i = 0; i < selector.getOffset(); i++) {
-          obj.scroll(Direction.DOWN, 1);
+          this.scroll(obj);
         }
       }
     }
@@ -269,9 +863,12 @@ public class ExtractionHelper {
   }
 
   /**
-   * Wait until current layout has changed.
+   * Wait until current layout has settled.<br><br>
+   *
+   * Only changes from now on are observed. Prefer {@link #click(UiObject2)}, which also observes
+   * changes happening right after the click.
    */
   public void waitForUpdate() {
-    this.device.waitForWindowUpdate(this.applicationID, this.TIMEOUT);
+    this.settle.awaitSettled();
   }
 }
@@ -0,0 +1,438 @@
+package com.github.cheapmon.apc.droid.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Long-lived connection to the host computer.<br><br>
+ *
+ * Every message is sent as one frame: type (1 byte), flags (1 byte), payload length (4 bytes) and
+ * payload. A result payload holds the length of the application ID (2 bytes), the ID and the text,
+ * which is deflated if the {@link #COMPRESSED} flag is set. A status payload holds the outcome
+ * (1 byte) and the application ID, a version payload the version code (8 bytes) and the
+ * application ID, a next payload the label of the device.<br><br>
+ *
+ * Frames are written by a background thread, so extraction does not wait for the network unless
+ * {@link #QUEUE_SIZE} results are still pending.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class ResultChannel {
+
+  /**
+   * Frame requesting the next application ID, containing the label of the device
+   */
+  private static final byte NEXT = 1;
+
+  /**
+   * Frame containing the next application ID, empty if there is no work left
+   */
+  private static final byte ID = 2;
+
+  /**
+   * Frame containing an extracted policy or model
+   */
+  private static final byte RESULT = 3;
+
+  /**
+   * Frame telling the host that this device has finished
+   */
+  private static final byte DONE = 4;
+
+  /**
+   * Frame containing the outcome of an application
+   */
+  private static final byte STATUS = 5;
+
+  /**
+   * Frame containing the installed version of an application
+   */
+  private static final byte VERSION = 6;
+
+  /**
+   * Frame telling whether the application has already been extracted
+   */
+  private static final byte CACHED = 7;
+
+  /**
+   * Outcome: application has been installed
+   */
+  public static final byte INSTALLED = 1;
+
+  /**
+   * Outcome: application is not available for this device
+   */
+  public static final byte NOT_AVAILABLE = 2;
+
+  /**
+   * Outcome: extraction failed
+   */
+  public static final byte FAILED = 3;
+
+  /**
+   * Outcome: search finished without finding a policy
+   */
+  public static final byte NOT_FOUND = 4;
+
+  /**
+   * Outcome: search exceeded its budget before finding a policy
+   */
+  public static final byte STOPPED = 5;
+
+  /**
+   * Flag for deflated result text
+   */
+  private static final byte COMPRESSED = 1;
+
+  /**
+   * Minimum size of result text in bytes to be compressed
+   */
+  private static final int COMPRESS_MIN = 1024;
+
+  /**
+   * Maximum number of frames waiting to be sent
+   */
+  private static final int QUEUE_SIZE = 16;
+
+  /**
+   * Maximum time to wait for a reply of the host computer in milliseconds
+   */
+  private static final int REPLY_TIMEOUT = 60 * 1000;
+
+  /**
+   * Marker to stop background thread
+   */
+  private static final Frame STOP = new Frame((byte) 0, (byte) 0, null, null, 0);
+
+  /**
+   * Socket connected to host computer
+   */
+  private final Socket socket;
+
+  /**
+   * Output to host computer, only used by background thread
+   */
+  private final DataOutputStream out;
+
+  /**
+   * Input from host computer
+   */
+  private final DataInputStream in;
+
+  /**
+   * Label of this device on host computer
+   */
+  private final String device;
+
+  /**
+   * Frames waiting to be sent
+   */
+  private final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+  /**
+   * Background thread writing frames
+   */
+  private final Thread sender;
+
+  /**
+   * Failure of background thread
+   */
+  private volatile IOException failure;
+
+  /**
+   * Connect to host computer.
+   *
+   * @param host Address of host computer
+   * @param port Port of host computer
+   * @param device Label of this device on host computer, may be empty
+   * @throws DroidException Connecting fails
+   */
+  public ResultChannel(String host, int port, String device) throws DroidException {
+    this.device = device;
+    try {
+      this.socket = new Socket(host, port);
+      this.socket.setSoTimeout(REPLY_TIMEOUT);
+      this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+      this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+    } catch (IOException ex) {
+      throw new DroidException("Connecting to host failed", ex);
+    }
+    this.sender = new Thread(this::run, "ResultChannel");
+    this.sender.start();
+  }
+
+  /**
+   * Send extracted text or model to host computer.
+   *
+   * @param id Identification of app
+   * @param txt Text
+   * @throws DroidException Sending failed
+   */
+  public void send(String id, String txt) throws DroidException {
+    this.enqueue(new Frame(RESULT, (byte) 0, id, txt, 0));
+  }
+
+  /**
+   * Report outcome of an application to host computer.
+   *
+   * @param id Identification of app
+   * @param outcome One of {@link #INSTALLED}, {@link #NOT_AVAILABLE}, {@link #FAILED},
+   *     {@link #NOT_FOUND} or {@link #STOPPED}
+   * @throws DroidException Sending failed
+   */
+  public void status(String id, byte outcome) throws DroidException {
+    this.enqueue(new Frame(STATUS, outcome, id, null, 0));
+  }
+
+  /**
+   * Request next application ID from host computer.
+   *
+   * @return Application ID or {@code null} if there is no work left
+   * @throws DroidException Request fails
+   */
+  public String nextID() throws DroidException {
+    this.enqueue(new Frame(NEXT, (byte) 0, this.device, null, 0));
+    byte[] payload = this.reply(ID);
+    return (payload.length == 0) ? null : new String(payload, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Ask host computer whether this version of an application has already been extracted.
+   *
+   * @param id Identification of app
+   * @param version Installed version code
+   * @return Extraction can be skipped
+   * @throws DroidException Request fails
+   */
+  public boolean isCached(String id, long version) throws DroidException {
+    this.enqueue(new Frame(VERSION, (byte) 0, id, null, version));
+    byte[] payload = this.reply(CACHED);
+    return payload.length == 1 && payload[0] == 1;
+  }
+
+  /**
+   * Read reply of host computer.<br><br>
+   *
+   * If the request could not be sent, no reply will come, so reading fails at once. Otherwise
+   * reading fails after {@link #REPLY_TIMEOUT}.
+   *
+   * @param type Expected type of reply
+   * @return Payload of reply
+   * @throws DroidException Sending request failed, reading fails or reply is unexpected
+   */
+  private byte[] reply(byte type) throws DroidException {
+    if (this.failure != null) {
+      throw new DroidException("Sending failed", this.failure);
+    }
+    try {
+      byte actual = this.in.readByte();
+      this.in.readByte();
+      byte[] payload = new byte[this.in.readInt()];
+      this.in.readFully(payload);
+      if (actual != type) {
+        throw new DroidException(String.format("Unexpected frame %s", actual));
+      }
+      return payload;
+    } catch (IOException ex) {
+      throw new DroidException("Reading reply failed", ex);
+    }
+  }
+
+  /**
+   * Tell host computer that this device has finished, wait for pending frames and disconnect.
+   *
+   * @throws DroidException Sending failed
+   */
+  public void close() throws DroidException {
+    this.enqueue(new Frame(DONE, (byte) 0, null, null, 0));
+    try {
+      this.queue.put(STOP);
+      this.sender.join();
+      this.socket.close();
+    } catch (InterruptedException | IOException ex) {
+      throw new DroidException("Closing connection failed", ex);
+    }
+    if (this.failure != null) {
+      throw new DroidException("Sending failed", this.failure);
+    }
+  }
+
+  /**
+   * Disconnect without telling host computer and without waiting for pending frames. Does nothing
+   * if the connection is already closed.<br><br>
+   *
+   * Used after extraction failed, so the host computer hands out unfinished application IDs
+   * again.
+   */
+  public void closeSilently() {
+    if (this.socket.isClosed()) {
+      return;
+    }
+    this.sender.interrupt();
+    try {
+      this.socket.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  /**
+   * Put frame into queue, waiting if the queue is full.
+   *
+   * @param frame Frame to send
+   * @throws DroidException Sending failed before
+   */
+  private void enqueue(Frame frame) throws DroidException {
+    if (this.failure != null) {
+      throw new DroidException("Sending failed", this.failure);
+    }
+    try {
+      this.queue.put(frame);
+    } catch (InterruptedException ex) {
+      throw new DroidException("Sending interrupted", ex);
+    }
+  }
+
+  /**
+   * Write queued frames until stopped. After a failure, frames are discarded.
+   */
+  private void run() {
+    try {
+      for (Frame frame = this.queue.take(); frame != STOP; frame = this.queue.take()) {
+        if (this.failure != null) {
+          continue;
+        }
+        try {
+          this.write(frame);
+        } catch (IOException ex) {
+          this.failure = ex;
+        }
+      }
+    } catch (InterruptedException ex) {
+      this.failure = new IOException("Sending interrupted", ex);
+    }
+  }
+
+  /**
+   * Encode and write single frame.
+   *
+   * @param frame Frame to write
+   * @throws IOException Writing fails
+   */
+  private void write(Frame frame) throws IOException {
+    if (frame.type == STATUS) {
+      byte[] id = frame.id.getBytes(StandardCharsets.UTF_8);
+      this.out.writeByte(STATUS);
+      this.out.writeByte(0);
+      this.out.writeInt(1 + id.length);
+      this.out.writeByte(frame.outcome);
+      this.out.write(id);
+      this.out.flush();
+      return;
+    }
+    if (frame.type == VERSION) {
+      byte[] id = frame.id.getBytes(StandardCharsets.UTF_8);
+      this.out.writeByte(VERSION);
+      this.out.writeByte(0);
+      this.out.writeInt(8 + id.length);
+      this.out.writeLong(frame.version);
+      this.out.write(id);
+      this.out.flush();
+      return;
+    }
+    if (frame.type == NEXT) {
+      byte[] device = frame.id.getBytes(StandardCharsets.UTF_8);
+      this.out.writeByte(NEXT);
+      this.out.writeByte(0);
+      this.out.writeInt(device.length);
+      this.out.write(device);
+      this.out.flush();
+      return;
+    }
+    if (frame.type != RESULT) {
+      this.out.writeByte(frame.type);
+      this.out.writeByte(0);
+      this.out.writeInt(0);
+      this.out.flush();
+      return;
+    }
+    byte[] id = frame.id.getBytes(StandardCharsets.UTF_8);
+    byte[] body = frame.txt.getBytes(StandardCharsets.UTF_8);
+    byte flags = 0;
+    if (body.length >= COMPRESS_MIN) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+      DeflaterOutputStream deflater = new DeflaterOutputStream(compressed);
+      deflater.write(body);
+      deflater.close();
+      if (compressed.size() < body.length) {
+        body = compressed.toByteArray();
+        flags = COMPRESSED;
+      }
+    }
+    this.out.writeByte(RESULT);
+    this.out.writeByte(flags);
+    this.out.writeInt(2 + id.length + body.length);
+    this.out.writeShort(id.length);
+    this.out.write(id);
+    this.out.write(body);
+    this.out.flush();
+  }
+
+  /**
+   * Single message to host computer.
+   */
+  private static class Frame {
+
+    /**
+     * Type of frame
+     */
+    private final byte type;
+
+    /**
+     * Outcome of status
+     */
+    private final byte outcome;
+
+    /**
+     * Application ID of result, status or version, device label of next
+     */
+    private final String id;
+
+    /**
+     * Text of result
+     */
+    private final String txt;
+
+    /**
+     * Version code of application
+     */
+    private final long version;
+
+    /**
+     * Create new frame.
+     *
+     * @param type Type of frame
+     * @param outcome Outcome of status
+     * @param id Application ID of result, status or version, device label of next
+     * @param txt Text of result
+     * @param version Version code of application
+     */
+    Frame(byte type, byte outcome, String id, String txt, long version) {
+      this.type = type;
+      this.outcome = outcome;
+      this.id = id;
+      this.txt = txt;
+      this.version = version;
+    }
+
+  }
+
+}
@@ -0,0 +1,163 @@
+package com.github.cheapmon.apc.droid.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limit time, clicks and restarts spent on one app.<br><br>
+ *
+ * A budget is shared by everything searching the same app. It is charged by
+ * {@link ExtractionHelper} on every click and restart and checked on every capture, so searches
+ * are cancelled cooperatively by a {@link BudgetExhaustedException} as soon as any limit is
+ * exceeded.<br><br>
+ *
+ * A search may narrow a budget to fewer clicks. Clicks and restarts charged to the narrowed budget
+ * are charged to the budget it was narrowed from as well.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class SearchBudget {
+
+  /**
+   * Time until the budget is exhausted, as of {@link System#nanoTime()}
+   */
+  private final long deadline;
+
+  /**
+   * Maximum number of clicks
+   */
+  private final int maxClicks;
+
+  /**
+   * Maximum number of restarts of the app
+   */
+  private final int maxRestarts;
+
+  /**
+   * Clicks spent so far
+   */
+  private int clicks;
+
+  /**
+   * Restarts spent so far
+   */
+  private int restarts;
+
+  /**
+   * Budget this one was narrowed from, {@code null} if there is none
+   */
+  private final SearchBudget parent;
+
+  /**
+   * Create new budget, starting now.
+   *
+   * @param millis Maximum time in milliseconds
+   * @param maxClicks Maximum number of clicks
+   * @param maxRestarts Maximum number of restarts of the app
+   */
+  public SearchBudget(long millis, int maxClicks, int maxRestarts) {
+    this(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis), maxClicks, maxRestarts, null);
+  }
+
+  /**
+   * Create new budget.
+   *
+   * @param deadline Time until the budget is exhausted, as of {@link System#nanoTime()}
+   * @param maxClicks Maximum number of clicks
+   * @param maxRestarts Maximum number of restarts of the app
+   * @param parent Budget this one is narrowed from, {@code null} if there is none
+   */
+  private SearchBudget(long deadline, int maxClicks, int maxRestarts, SearchBudget parent) {
+    this.deadline = deadline;
+    this.maxClicks = maxClicks;
+    this.maxRestarts = maxRestarts;
+    this.parent = parent;
+  }
+
+  /**
+   * Create budget without limits.
+   *
+   * @return New budget
+   */
+  public static SearchBudget unlimited() {
+    return new SearchBudget(TimeUnit.DAYS.toMillis(365), Integer.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Narrow this budget to fewer clicks, keeping time and restarts.
+   *
+   * @param maxClicks Maximum number of clicks of narrowed budget
+   * @return New budget, charging this one as well
+   */
+  public SearchBudget limit(int maxClicks) {
+    return new SearchBudget(this.deadline, maxClicks, Integer.MAX_VALUE, this);
+  }
+
+  /**
+   * Charge one click.
+   *
+   * @throws BudgetExhaustedException Budget is exhausted
+   */
+  public void click() {
+    this.check();
+    if (this.clicks >= this.maxClicks) {
+      throw new BudgetExhaustedException(String.format("%d clicks used", this.clicks));
+    }
+    if (this.parent != null) {
+      this.parent.click();
+    }
+    this.clicks++;
+  }
+
+  /**
+   * Charge one restart of the app.
+   *
+   * @throws BudgetExhaustedException Budget is exhausted
+   */
+  public void restart() {
+    this.check();
+    if (this.restarts >= this.maxRestarts) {
+      throw new BudgetExhaustedException(String.format("%d restarts used", this.restarts));
+    }
+    if (this.parent != null) {
+      this.parent.restart();
+    }
+    this.restarts++;
+  }
+
+  /**
+   * Check whether there is time left.
+   *
+   * @throws BudgetExhaustedException Time is up
+   */
+  public void check() {
+    if (System.nanoTime() - this.deadline > 0) {
+      throw new BudgetExhaustedException("Time is up");
+    }
+    if (this.parent != null) {
+      this.parent.check();
+    }
+  }
+
+  /**
+   * Check whether any limit has been reached.
+   *
+   * @return Whether budget is exhausted
+   */
+  public boolean isExhausted() {
+    return System.nanoTime() - this.deadline > 0 || this.clicks >= this.maxClicks
+        || this.restarts >= this.maxRestarts
+        || (this.parent != null && this.parent.isExhausted());
+  }
+
+  /**
+   * Describe spent and remaining budget.
+   *
+   * @return Description
+   */
+  @Override
+  public String toString() {
+    long left = Math.max(0, TimeUnit.NANOSECONDS.toSeconds(this.deadline - System.nanoTime()));
+    return String.format("%d clicks, %d restarts, %d s left", this.clicks, this.restarts, left);
+  }
+
+}
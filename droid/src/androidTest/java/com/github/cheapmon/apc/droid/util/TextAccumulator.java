@@ -0,0 +1,144 @@
+package com.github.cheapmon.apc.droid.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Accumulate text of a container while it is scrolled.<br><br>
+ *
+ * Every scroll position shows a window of lines that usually overlaps the end of the text seen so
+ * far. The longest overlap is found by comparing polynomial rolling hashes of the accumulated
+ * suffix and the window prefix, so each window costs time linear in its size. Only lines after
+ * the overlap are appended. Unlike a set of seen lines, lines repeated within the text are kept.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class TextAccumulator {
+
+  /**
+   * Base of rolling hash
+   */
+  private static final long BASE = 0x100000001B3L;
+
+  /**
+   * Accumulated lines
+   */
+  private final List<String> lines = new ArrayList<>();
+
+  /**
+   * Accumulated text, lines separated by spaces and line breaks
+   */
+  private final StringBuilder text = new StringBuilder();
+
+  /**
+   * Rolling hashes of all prefixes of accumulated lines, {@code prefix[i]} covers {@code i} lines
+   */
+  private long[] prefix = new long[16];
+
+  /**
+   * Powers of base, {@code power[i]} is base to the {@code i}
+   */
+  private long[] power = {1};
+
+  /**
+   * Add lines shown at the current scroll position.
+   *
+   * @param window Lines shown, in order
+   * @return Number of lines appended, 0 if the window showed nothing new
+   */
+  public int add(List<String> window) {
+    int n = this.lines.size();
+    int m = window.size();
+    long[] hashes = new long[m];
+    for (int i = 0; i < m; i++) {
+      hashes[i] = hash(window.get(i));
+    }
+    this.ensurePower(Math.min(n, m));
+    int overlap = 0;
+    long windowHash = 0;
+    long[] windowPrefix = new long[m + 1];
+    for (int k = 1; k <= m; k++) {
+      windowHash = windowHash * BASE + hashes[k - 1];
+      windowPrefix[k] = windowHash;
+    }
+    for (int k = Math.min(n, m); k > 0; k--) {
+      long suffix = this.prefix[n] - this.prefix[n - k] * this.power[k];
+      if (suffix == windowPrefix[k] && this.lines.subList(n - k, n).equals(window.subList(0, k))) {
+        overlap = k;
+        break;
+      }
+    }
+    if (overlap == 0 && m > 0 && m <= n && this.contains(window)) {
+      return 0;
+    }
+    for (int i = overlap; i < m; i++) {
+      this.append(window.get(i), hashes[i]);
+    }
+    return m - overlap;
+  }
+
+  /**
+   * Get accumulated text.
+   *
+   * @return Text
+   */
+  public CharSequence getText() {
+    return this.text;
+  }
+
+  /**
+   * Check whether the accumulated lines contain a window anywhere, e.g. after scrolling back.
+   *
+   * @param window Lines shown
+   * @return Whether window is contained
+   */
+  private boolean contains(List<String> window) {
+    return Collections.indexOfSubList(this.lines, window) >= 0;
+  }
+
+  /**
+   * Append one line.
+   *
+   * @param line Line to append
+   * @param hash Hash of line
+   */
+  private void append(String line, long hash) {
+    int n = this.lines.size();
+    if (n + 1 >= this.prefix.length) {
+      this.prefix = Arrays.copyOf(this.prefix, 2 * this.prefix.length);
+    }
+    this.prefix[n + 1] = this.prefix[n] * BASE + hash;
+    this.lines.add(line);
+    this.text.append(line).append(" \n");
+  }
+
+  /**
+   * Make sure powers of base are known up to an exponent.
+   *
+   * @param exponent Highest exponent needed
+   */
+  private void ensurePower(int exponent) {
+    if (exponent < this.power.length) {
+      return;
+    }
+    int known = this.power.length;
+    this.power = Arrays.copyOf(this.power, Math.max(exponent + 1, 2 * known));
+    for (int i = known; i < this.power.length; i++) {
+      this.power[i] = this.power[i - 1] * BASE;
+    }
+  }
+
+  /**
+   * Hash one line.
+   *
+   * @param line Line
+   * @return 64 bit hash
+   */
+  private static long hash(String line) {
+    long h = line.hashCode() * 0x9E3779B97F4A7C15L + line.length();
+    return h ^ (h >>> 31);
+  }
+
+}
@@ -0,0 +1,189 @@
+package com.github.cheapmon.apc.droid.extract;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of a single accessibility node, captured as part of a window snapshot.<br><br>
+ *
+ * Reading properties of a snapshot does not talk to the device, unlike reading properties of a
+ * {@code UiObject2}. Bounds are stored as plain coordinates, so snapshots can be used without the
+ * Android framework.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class SnapshotNode {
+
+  /**
+   * Class name of view
+   */
+  private final String className;
+
+  /**
+   * Package of view
+   */
+  private final String packageName;
+
+  /**
+   * Text of view, empty if there is none
+   */
+  private final String text;
+
+  /**
+   * Content description of view, empty if there is none
+   */
+  private final String description;
+
+  /**
+   * Resource name of view, empty if there is none
+   */
+  private final String resourceName;
+
+  /**
+   * Whether view can be clicked
+   */
+  private final boolean clickable;
+
+  /**
+   * Whether view can be scrolled
+   */
+  private final boolean scrollable;
+
+  /**
+   * Visible bounds: left, top, right and bottom
+   */
+  private final int[] bounds;
+
+  /**
+   * Child nodes in drawing order
+   */
+  private final List<SnapshotNode> children;
+
+  /**
+   * Create new node.
+   *
+   * @param className Class name of view
+   * @param packageName Package of view
+   * @param text Text of view
+   * @param description Content description of view
+   * @param resourceName Resource name of view
+   * @param clickable Whether view can be clicked
+   * @param scrollable Whether view can be scrolled
+   * @param bounds Visible bounds: left, top, right and bottom
+   * @param children Child nodes
+   */
+  SnapshotNode(String className, String packageName, String text, String description,
+      String resourceName, boolean clickable, boolean scrollable, int[] bounds,
+      List<SnapshotNode> children) {
+    this.className = className;
+    this.packageName = packageName;
+    this.text = text;
+    this.description = description;
+    this.resourceName = resourceName;
+    this.clickable = clickable;
+    this.scrollable = scrollable;
+    this.bounds = bounds.clone();
+    this.children = Collections.unmodifiableList(children);
+  }
+
+  /**
+   * Get class name of view.
+   *
+   * @return Class name, empty if unknown
+   */
+  public String getClassName() {
+    return this.className;
+  }
+
+  /**
+   * Get package of view.
+   *
+   * @return Package name, empty if unknown
+   */
+  public String getPackageName() {
+    return this.packageName;
+  }
+
+  /**
+   * Get text of view.
+   *
+   * @return Text, empty if there is none
+   */
+  public String getText() {
+    return this.text;
+  }
+
+  /**
+   * Get content description of view.
+   *
+   * @return Description, empty if there is none
+   */
+  public String getDescription() {
+    return this.description;
+  }
+
+  /**
+   * Get resource name of view.
+   *
+   * @return Resource name, empty if there is none
+   */
+  public String getResourceName() {
+    return this.resourceName;
+  }
+
+  /**
+   * Get whether view can be clicked.
+   *
+   * @return View is clickable
+   */
+  public boolean isClickable() {
+    return this.clickable;
+  }
+
+  /**
+   * Get whether view can be scrolled.
+   *
+   * @return View is scrollable
+   */
+  public boolean isScrollable() {
+    return this.scrollable;
+  }
+
+  /**
+   * Get visible bounds of view.
+   *
+   * @return Left, top, right and bottom coordinate
+   */
+  public int[] getBounds() {
+    return this.bounds.clone();
+  }
+
+  /**
+   * Get child nodes.
+   *
+   * @return Unmodifiable list of children
+   */
+  public List<SnapshotNode> getChildren() {
+    return this.children;
+  }
+
+  /**
+   * Find first node in this subtree, in depth-first order, whose class name ends with a suffix.
+   *
+   * @param suffix Suffix of class name
+   * @return Node or {@code null} if there is none
+   */
+  public SnapshotNode findByClassSuffix(String suffix) {
+    if (this.className.endsWith(suffix)) {
+      return this;
+    }
+    for (SnapshotNode child : this.children) {
+      SnapshotNode found = child.findByClassSuffix(suffix);
+      if (found != null) {
+        return found;
+      }
+    }
+    return null;
+  }
+
+}
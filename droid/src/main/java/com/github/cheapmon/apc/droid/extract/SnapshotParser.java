@@ -0,0 +1,150 @@
+package com.github.cheapmon.apc.droid.extract;
+
+import com.github.cheapmon.apc.droid.util.DroidException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Parse window hierarchy dumps into snapshot trees.<br><br>
+ *
+ * Dumps are read as produced by {@code UiDevice.dumpWindowHierarchy}: a {@code hierarchy} element
+ * containing one {@code node} element per window root, nested like the views. The dump is streamed
+ * through a SAX parser, so no DOM of the whole dump is built.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class SnapshotParser {
+
+  /**
+   * Bounds of nodes without valid bounds attribute
+   */
+  private static final int[] NO_BOUNDS = {0, 0, 0, 0};
+
+  /**
+   * Parse window hierarchy dump.
+   *
+   * @param in Dump in XML format
+   * @return Window roots in order of the dump
+   * @throws DroidException Dump cannot be parsed
+   */
+  public static List<SnapshotNode> parse(InputStream in) throws DroidException {
+    Handler handler = new Handler();
+    try {
+      SAXParserFactory.newInstance().newSAXParser().parse(in, handler);
+    } catch (ParserConfigurationException | SAXException | IOException ex) {
+      throw new DroidException("Parsing window hierarchy failed", ex);
+    }
+    return handler.roots;
+  }
+
+  /**
+   * Parse bounds attribute of the form {@code [left,top][right,bottom]}.
+   *
+   * @param bounds Bounds attribute
+   * @return Left, top, right and bottom coordinate
+   */
+  static int[] parseBounds(String bounds) {
+    if (bounds == null) {
+      return NO_BOUNDS;
+    }
+    int[] result = new int[4];
+    int index = 0;
+    int value = 0;
+    boolean negative = false;
+    boolean inNumber = false;
+    for (int i = 0; i < bounds.length() && index < 4; i++) {
+      char c = bounds.charAt(i);
+      if (c >= '0' && c <= '9') {
+        value = value * 10 + (c - '0');
+        inNumber = true;
+      } else if (c == '-') {
+        negative = true;
+      } else if (inNumber) {
+        result[index++] = negative ? -value : value;
+        value = 0;
+        negative = false;
+        inNumber = false;
+      }
+    }
+    return (index == 4) ? result : NO_BOUNDS;
+  }
+
+  /**
+   * SAX handler building nodes bottom-up.
+   */
+  private static class Handler extends DefaultHandler {
+
+    /**
+     * Window roots
+     */
+    private final List<SnapshotNode> roots = new ArrayList<>();
+
+    /**
+     * Attributes of open elements
+     */
+    private final Deque<String[]> attributes = new ArrayDeque<>();
+
+    /**
+     * Children collected for open elements
+     */
+    private final Deque<List<SnapshotNode>> children = new ArrayDeque<>();
+
+    /**
+     * Remember attributes of a node and start collecting its children.
+     */
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attrs) {
+      if (!qName.equals("node")) {
+        return;
+      }
+      this.attributes.push(new String[]{
+          value(attrs, "class"), value(attrs, "package"), value(attrs, "text"),
+          value(attrs, "content-desc"), value(attrs, "resource-id"), value(attrs, "clickable"),
+          value(attrs, "scrollable"), attrs.getValue("bounds")
+      });
+      this.children.push(new ArrayList<>());
+    }
+
+    /**
+     * Create node from its attributes and children and add it to its parent.
+     */
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      if (!qName.equals("node")) {
+        return;
+      }
+      String[] a = this.attributes.pop();
+      SnapshotNode node = new SnapshotNode(a[0], a[1], a[2], a[3], a[4],
+          Boolean.parseBoolean(a[5]), Boolean.parseBoolean(a[6]), parseBounds(a[7]),
+          this.children.pop());
+      if (this.children.isEmpty()) {
+        this.roots.add(node);
+      } else {
+        this.children.peek().add(node);
+      }
+    }
+
+    /**
+     * Get attribute value.
+     *
+     * @param attrs Attributes of element
+     * @param name Name of attribute
+     * @return Value, empty if missing
+     */
+    private static String value(Attributes attrs, String name) {
+      String value = attrs.getValue(name);
+      return (value == null) ? "" : value;
+    }
+
+  }
+
+}
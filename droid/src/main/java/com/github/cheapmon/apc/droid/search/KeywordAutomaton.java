@@ -0,0 +1,263 @@
+package com.github.cheapmon.apc.droid.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton over a fixed set of keywords.<br><br>
+ *
+ * Keywords are compiled into a dense transition table, so feeding a text character by character
+ * finds all occurrences of all keywords in one pass, no matter how many keywords there are.
+ * Characters are lower cased on the fly, keywords are expected in lower case. Characters which
+ * occur in no keyword reset the automaton.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+class KeywordAutomaton {
+
+  /**
+   * Start state
+   */
+  static final int START = 0;
+
+  /**
+   * Number of characters with a direct index, larger characters are looked up
+   */
+  private static final int DIRECT = 256;
+
+  /**
+   * Symbol of every character below {@link #DIRECT}, -1 if it occurs in no keyword
+   */
+  private final int[] symbols = new int[DIRECT];
+
+  /**
+   * Characters above {@link #DIRECT} occurring in keywords, their symbol is
+   * {@code directSymbols + index}
+   */
+  private final char[] wide;
+
+  /**
+   * Number of symbols of characters below {@link #DIRECT}
+   */
+  private final int directSymbols;
+
+  /**
+   * Number of symbols
+   */
+  private final int alphabet;
+
+  /**
+   * Transition table, {@code transitions[state * alphabet + symbol]}
+   */
+  private final int[] transitions;
+
+  /**
+   * Keywords ending in every state, including those reached by failure links
+   */
+  private final int[][] outputs;
+
+  /**
+   * Length of every keyword
+   */
+  private final int[] lengths;
+
+  /**
+   * Maximum number of keywords ending at the same position
+   */
+  private final int maxOutputs;
+
+  /**
+   * Compile keywords into automaton.
+   *
+   * @param keywords Lower case keywords
+   */
+  KeywordAutomaton(String[] keywords) {
+    Arrays.fill(this.symbols, -1);
+    StringBuilder wideChars = new StringBuilder();
+    int direct = 0;
+    for (String keyword : keywords) {
+      for (char c : keyword.toCharArray()) {
+        if (c < DIRECT) {
+          if (this.symbols[c] < 0) {
+            this.symbols[c] = direct++;
+          }
+        } else if (wideChars.indexOf(String.valueOf(c)) < 0) {
+          wideChars.append(c);
+        }
+      }
+    }
+    this.directSymbols = direct;
+    this.wide = wideChars.toString().toCharArray();
+    this.alphabet = direct + this.wide.length;
+    this.lengths = new int[keywords.length];
+    List<int[]> trie = new ArrayList<>();
+    List<List<Integer>> ends = new ArrayList<>();
+    trie.add(this.newRow());
+    ends.add(new ArrayList<>());
+    for (int k = 0; k < keywords.length; k++) {
+      this.lengths[k] = keywords[k].length();
+      int state = START;
+      for (char c : keywords[k].toCharArray()) {
+        int symbol = this.symbol(c);
+        if (trie.get(state)[symbol] < 0) {
+          trie.get(state)[symbol] = trie.size();
+          trie.add(this.newRow());
+          ends.add(new ArrayList<>());
+        }
+        state = trie.get(state)[symbol];
+      }
+      ends.get(state).add(k);
+    }
+    int states = trie.size();
+    int[] fail = new int[states];
+    this.transitions = new int[states * this.alphabet];
+    this.outputs = new int[states][];
+    Queue<Integer> queue = new ArrayDeque<>();
+    for (int symbol = 0; symbol < this.alphabet; symbol++) {
+      int next = trie.get(START)[symbol];
+      if (next < 0) {
+        this.transitions[symbol] = START;
+      } else {
+        this.transitions[symbol] = next;
+        queue.add(next);
+      }
+    }
+    this.outputs[START] = toArray(ends.get(START));
+    int max = 0;
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      List<Integer> out = new ArrayList<>(ends.get(state));
+      for (int k : this.outputs[fail[state]]) {
+        out.add(k);
+      }
+      this.outputs[state] = toArray(out);
+      max = Math.max(max, out.size());
+      for (int symbol = 0; symbol < this.alphabet; symbol++) {
+        int next = trie.get(state)[symbol];
+        int fallback = this.transitions[fail[state] * this.alphabet + symbol];
+        if (next < 0) {
+          this.transitions[state * this.alphabet + symbol] = fallback;
+        } else {
+          this.transitions[state * this.alphabet + symbol] = next;
+          fail[next] = fallback;
+          queue.add(next);
+        }
+      }
+    }
+    this.maxOutputs = max;
+  }
+
+  /**
+   * Feed next character of a text.
+   *
+   * @param state Current state, {@link #START} at the beginning of a text
+   * @param c Next character, lower cased before lookup
+   * @return Next state
+   */
+  int next(int state, char c) {
+    int symbol = this.symbol(Character.toLowerCase(c));
+    return (symbol < 0) ? START : this.transitions[state * this.alphabet + symbol];
+  }
+
+  /**
+   * Get keywords ending in a state.
+   *
+   * @param state State
+   * @return Indices of keywords, must not be modified
+   */
+  int[] outputs(int state) {
+    return this.outputs[state];
+  }
+
+  /**
+   * Get length of a keyword.
+   *
+   * @param keyword Index of keyword
+   * @return Length
+   */
+  int length(int keyword) {
+    return this.lengths[keyword];
+  }
+
+  /**
+   * Get number of keywords.
+   *
+   * @return Number of keywords
+   */
+  int size() {
+    return this.lengths.length;
+  }
+
+  /**
+   * Get maximum number of keywords ending at the same position of a text.
+   *
+   * @return Maximum number of keywords
+   */
+  int maxOutputs() {
+    return this.maxOutputs;
+  }
+
+  /**
+   * Check whether a text contains at least one keyword.
+   *
+   * @param text Text to check
+   * @return Whether a keyword occurs
+   */
+  boolean containsAny(CharSequence text) {
+    int state = START;
+    for (int i = 0; i < text.length(); i++) {
+      state = this.next(state, text.charAt(i));
+      if (this.outputs[state].length > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get symbol of character.
+   *
+   * @param c Character
+   * @return Symbol or -1 if the character occurs in no keyword
+   */
+  private int symbol(char c) {
+    if (c < DIRECT) {
+      return this.symbols[c];
+    }
+    for (int i = 0; i < this.wide.length; i++) {
+      if (this.wide[i] == c) {
+        return this.directSymbols + i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Create empty row of trie.
+   *
+   * @return Row without transitions
+   */
+  private int[] newRow() {
+    int[] row = new int[this.alphabet];
+    Arrays.fill(row, -1);
+    return row;
+  }
+
+  /**
+   * Convert list of keyword indices to array.
+   *
+   * @param list Keyword indices
+   * @return Array of indices
+   */
+  private static int[] toArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+}
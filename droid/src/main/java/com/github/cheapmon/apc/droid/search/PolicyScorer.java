@@ -0,0 +1,148 @@
+package com.github.cheapmon.apc.droid.search;
+
+import com.github.cheapmon.apc.droid.util.TextVerdict;
+import java.util.Arrays;
+
+/**
+ * Score texts by the density of privacy policy keywords.<br><br>
+ *
+ * All keywords are compiled into one {@link KeywordAutomaton}, so a text is scanned once no matter
+ * how many keywords there are. Characters are lower cased while scanning, and occurrences of a
+ * keyword are counted without overlap, like {@code StringUtils.countMatches} on the lower cased
+ * text. Words and matches are counted in the same pass, which stops as soon as the result is
+ * certain.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class PolicyScorer implements TextVerdict {
+
+  /**
+   * Keywords compiled into automaton
+   */
+  private final KeywordAutomaton automaton;
+
+  /**
+   * Minimum number of words of a policy
+   */
+  private final int wordThreshold;
+
+  /**
+   * Minimum ratio of keyword matches to words of a policy
+   */
+  private final double ratioThreshold;
+
+  /**
+   * End of last counted match of every keyword, reused by every scan, so scorers must not be
+   * shared between threads
+   */
+  private final int[] nextStart;
+
+  /**
+   * Compile keywords into automaton.
+   *
+   * @param keywords Lower case keywords
+   * @param wordThreshold Minimum number of words, texts must have more words to be a policy
+   * @param ratioThreshold Minimum ratio of keyword matches to words
+   */
+  public PolicyScorer(String[] keywords, int wordThreshold, double ratioThreshold) {
+    this.automaton = new KeywordAutomaton(keywords);
+    this.wordThreshold = wordThreshold;
+    this.ratioThreshold = ratioThreshold;
+    this.nextStart = new int[this.automaton.size()];
+  }
+
+  /**
+   * Check if a given text is a policy.<br><br>
+   *
+   * A text is a policy if it has more than the minimum number of words and the ratio of keyword
+   * matches to words reaches the threshold. Words are separated by spaces.
+   *
+   * @param text Text to check
+   * @return Whether the text is a privacy policy
+   */
+  public boolean isPolicy(CharSequence text) {
+    if (text == null || text.length() <= this.wordThreshold) {
+      return false;
+    }
+    return this.scan(text);
+  }
+
+  /**
+   * Check whether a text contains any keyword, so it may turn out to be a policy when read
+   * completely.
+   *
+   * @param text Text shown before reading
+   * @return Whether text contains a keyword
+   */
+  @Override
+  public boolean isWorthReading(CharSequence text) {
+    KeywordAutomaton automaton = this.automaton;
+    int state = KeywordAutomaton.START;
+    for (int i = 0; i < text.length(); i++) {
+      state = automaton.next(state, text.charAt(i));
+      if (automaton.outputs(state).length > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check whether the text read so far is already a policy. Every search stops at the first
+   * policy, so reading further would not change its outcome.
+   *
+   * @param text Text read so far
+   * @return Whether text is a policy
+   */
+  @Override
+  public boolean isSettled(CharSequence text) {
+    return this.isPolicy(text);
+  }
+
+  /**
+   * Count words and keyword matches in one pass, each keyword without overlap.<br><br>
+   *
+   * Words are counted like {@code StringUtils.split(text, " ").length}. Scanning stops once the
+   * ratio is reached even if every remaining character started a new word, or once it can no
+   * longer be reached even if every remaining character completed keywords.
+   *
+   * @param text Text to scan
+   * @return Whether the text has more than the minimum number of words and reaches the ratio
+   */
+  private boolean scan(CharSequence text) {
+    KeywordAutomaton automaton = this.automaton;
+    int[] nextStart = this.nextStart;
+    Arrays.fill(nextStart, 0);
+    int length = text.length();
+    int words = 0;
+    int matches = 0;
+    boolean inWord = false;
+    int state = KeywordAutomaton.START;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c == ' ') {
+        inWord = false;
+      } else if (!inWord) {
+        inWord = true;
+        words++;
+      }
+      state = automaton.next(state, c);
+      for (int k : automaton.outputs(state)) {
+        if (i + 1 - automaton.length(k) >= nextStart[k]) {
+          nextStart[k] = i + 1;
+          matches++;
+        }
+      }
+      int rest = length - i - 1;
+      if (words > this.wordThreshold
+          && matches >= this.ratioThreshold * (words + (rest + 1) / 2)) {
+        return true;
+      }
+      if (matches + (double) rest * automaton.maxOutputs() < this.ratioThreshold * words) {
+        return false;
+      }
+    }
+    return words > this.wordThreshold && matches >= this.ratioThreshold * words;
+  }
+
+}
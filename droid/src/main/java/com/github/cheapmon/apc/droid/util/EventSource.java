@@ -0,0 +1,51 @@
+package com.github.cheapmon.apc.droid.util;
+
+/**
+ * Source of accessibility events.<br><br>
+ *
+ * Decouples components reacting to UI changes from the device, so they can be driven by a fake
+ * source with a fake clock.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public interface EventSource {
+
+  /**
+   * Register listener for all events of this source.
+   *
+   * @param listener Listener to register
+   */
+  void addListener(Listener listener);
+
+  /**
+   * Unregister listener.
+   *
+   * @param listener Listener to unregister
+   */
+  void removeListener(Listener listener);
+
+  /**
+   * Get current time of the clock events are stamped with.
+   *
+   * @return Current time in milliseconds
+   */
+  long now();
+
+  /**
+   * Receiver of accessibility events.
+   */
+  interface Listener {
+
+    /**
+     * Handle event.
+     *
+     * @param type Event type, as in {@link android.view.accessibility.AccessibilityEvent}
+     * @param packageName Package of application the event originates from, may be {@code null}
+     * @param className Class of view or activity the event originates from, may be {@code null}
+     * @param time Time of event in milliseconds, as of {@link #now()}
+     */
+    void onEvent(int type, CharSequence packageName, CharSequence className, long time);
+
+  }
+
+}
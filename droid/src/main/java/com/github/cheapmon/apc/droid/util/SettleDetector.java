@@ -0,0 +1,252 @@
+package com.github.cheapmon.apc.droid.util;
+
+import android.view.accessibility.AccessibilityEvent;
+
+/**
+ * Detect when the UI has settled after an action.<br><br>
+ *
+ * The detector is armed right before an action. Afterwards, it waits until window events stop
+ * for a quiet window. If no event arrives at all, the action is assumed to change nothing and
+ * waiting ends after an idle timeout.<br><br>
+ *
+ * Both windows adapt to the device: the delay between action and first event and the largest
+ * gap between events are averaged over all settled actions. Waiting never exceeds a hard limit,
+ * so constantly changing screens, e.g. animations, do not block the search.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class SettleDetector {
+
+  /**
+   * Lower bound of quiet window and idle timeout in milliseconds
+   */
+  private static final long MIN_WINDOW = 50;
+
+  /**
+   * Upper bound of quiet window in milliseconds
+   */
+  private static final long MAX_QUIET = 500;
+
+  /**
+   * Initial estimate of latency and gaps in milliseconds
+   */
+  private static final double INITIAL_ESTIMATE = 100;
+
+  /**
+   * Quiet window as multiple of the largest gap between events
+   */
+  private static final double QUIET_FACTOR = 2;
+
+  /**
+   * Idle timeout as multiple of the delay until the first event
+   */
+  private static final double IDLE_FACTOR = 3;
+
+  /**
+   * Weight of newest measurement in averages
+   */
+  private static final double SMOOTHING = 0.25;
+
+  /**
+   * Package of the system UI, whose events, e.g. of the status bar, are ignored
+   */
+  private static final String SYSTEM_UI = "com.android.systemui";
+
+  /**
+   * Default hard limit for waiting in milliseconds
+   */
+  public static final long DEFAULT_MAX_WAIT = 5000;
+
+  /**
+   * Source of events and time
+   */
+  private final EventSource source;
+
+  /**
+   * Hard limit for waiting in milliseconds
+   */
+  private final long maxWait;
+
+  /**
+   * Number of window changes observed so far
+   */
+  private volatile long version;
+
+  /**
+   * Whether an action is being observed
+   */
+  private boolean armed;
+
+  /**
+   * Time the detector was armed
+   */
+  private long armTime;
+
+  /**
+   * Time of first event since arming, negative if there was none
+   */
+  private long firstEvent;
+
+  /**
+   * Time of last event since arming
+   */
+  private long lastEvent;
+
+  /**
+   * Largest gap between events since arming
+   */
+  private long maxGap;
+
+  /**
+   * Average delay between action and first event
+   */
+  private double latency = INITIAL_ESTIMATE;
+
+  /**
+   * Average largest gap between events of one action
+   */
+  private double gap = INITIAL_ESTIMATE;
+
+  /**
+   * Create new detector.
+   *
+   * @param source Source of events and time
+   * @param maxWait Hard limit for waiting in milliseconds
+   */
+  public SettleDetector(EventSource source, long maxWait) {
+    this.source = source;
+    this.maxWait = maxWait;
+    source.addListener(new EventSource.Listener() {
+      @Override
+      public void onEvent(int type, CharSequence packageName, CharSequence className,
+          long time) {
+        SettleDetector.this.onEvent(type, packageName, time);
+      }
+    });
+  }
+
+  /**
+   * Start observing, call right before an action.
+   */
+  public synchronized void arm() {
+    this.armed = true;
+    this.armTime = this.source.now();
+    this.firstEvent = -1;
+    this.lastEvent = -1;
+    this.maxGap = 0;
+  }
+
+  /**
+   * Wait until the UI has settled since the detector was armed. An unarmed detector is armed
+   * first, so only events from now on are observed.
+   *
+   * @return Whether the UI settled before the hard limit
+   */
+  public synchronized boolean awaitSettled() {
+    if (!this.armed) {
+      this.arm();
+    }
+    long deadline = this.armTime + this.maxWait;
+    try {
+      while (true) {
+        long now = this.source.now();
+        long wake;
+        if (this.firstEvent < 0) {
+          wake = this.armTime + this.getIdleTimeout();
+        } else {
+          wake = this.lastEvent + this.getQuietWindow();
+        }
+        if (now >= wake) {
+          this.learn();
+          return true;
+        }
+        if (now >= deadline) {
+          this.armed = false;
+          return false;
+        }
+        this.wait(Math.max(1, Math.min(wake, deadline) - now));
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      this.armed = false;
+      return false;
+    }
+  }
+
+  /**
+   * Get time without events after which the UI is considered settled.
+   *
+   * @return Quiet window in milliseconds
+   */
+  public synchronized long getQuietWindow() {
+    return Math.min(MAX_QUIET, Math.max(MIN_WINDOW, Math.round(QUIET_FACTOR * this.gap)));
+  }
+
+  /**
+   * Get time to wait for the first event after which an action is considered without effect.
+   *
+   * @return Idle timeout in milliseconds
+   */
+  public synchronized long getIdleTimeout() {
+    return Math.min(this.maxWait,
+        Math.max(MIN_WINDOW, Math.round(IDLE_FACTOR * this.latency)));
+  }
+
+  /**
+   * Get number of window changes observed so far. Anything derived from the layout stays valid
+   * as long as this number does not change.
+   *
+   * @return Version of window content
+   */
+  public long getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Record event, if it changes a window, and observe it if it belongs to the observed action.
+   *
+   * @param type Event type
+   * @param packageName Package of application the event originates from
+   * @param time Time of event
+   */
+  private synchronized void onEvent(int type, CharSequence packageName, long time) {
+    if (!isWindowChange(type) || (packageName != null && SYSTEM_UI.contentEquals(packageName))) {
+      return;
+    }
+    this.version++;
+    if (!this.armed || time < this.armTime) {
+      return;
+    }
+    if (this.firstEvent < 0) {
+      this.firstEvent = time;
+    } else {
+      this.maxGap = Math.max(this.maxGap, time - this.lastEvent);
+    }
+    this.lastEvent = Math.max(this.lastEvent, time);
+    this.notifyAll();
+  }
+
+  /**
+   * Update estimates with the settled action and disarm.
+   */
+  private void learn() {
+    if (this.firstEvent >= 0) {
+      this.latency += SMOOTHING * ((this.firstEvent - this.armTime) - this.latency);
+      this.gap += SMOOTHING * (this.maxGap - this.gap);
+    }
+    this.armed = false;
+  }
+
+  /**
+   * Check whether an event type signals a change of window content.
+   *
+   * @param type Event type
+   * @return Whether type is relevant
+   */
+  private static boolean isWindowChange(int type) {
+    return type == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+        || type == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
+        || type == AccessibilityEvent.TYPE_VIEW_SCROLLED;
+  }
+
+}
@@ -0,0 +1,26 @@
+package com.github.cheapmon.apc.droid.util;
+
+/**
+ * Judge texts that are read piece by piece, e.g. while scrolling.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public interface TextVerdict {
+
+  /**
+   * Check whether a text is worth reading completely, e.g. because it already shows keywords.
+   *
+   * @param text Text shown before reading
+   * @return Whether reading may take many steps
+   */
+  boolean isWorthReading(CharSequence text);
+
+  /**
+   * Check whether reading can stop because the text read so far is all that is needed.
+   *
+   * @param text Text read so far
+   * @return Whether reading can stop
+   */
+  boolean isSettled(CharSequence text);
+
+}
@@ -0,0 +1,134 @@
+package com.github.cheapmon.apc.droid.extract;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.github.cheapmon.apc.droid.util.DroidException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Test parsing of window hierarchy dumps.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class SnapshotParserTest {
+
+  /**
+   * Parse recorded dump.
+   *
+   * @return Window roots
+   * @throws Exception Parsing fails
+   */
+  private static List<SnapshotNode> parseDump() throws Exception {
+    try (InputStream in = SnapshotParserTest.class.getResourceAsStream("hierarchy.xml")) {
+      return SnapshotParser.parse(in);
+    }
+  }
+
+  /**
+   * Every window of the dump becomes one root, in order of the dump.
+   *
+   * @throws Exception Parsing fails
+   */
+  @Test
+  public void parsesAllWindows() throws Exception {
+    List<SnapshotNode> roots = parseDump();
+    assertEquals(3, roots.size());
+    assertEquals("com.example.shop", roots.get(0).getPackageName());
+    assertEquals("com.android.systemui", roots.get(1).getPackageName());
+    assertEquals("com.example.shop", roots.get(2).getPackageName());
+  }
+
+  /**
+   * Nodes are nested like the views.
+   *
+   * @throws Exception Parsing fails
+   */
+  @Test
+  public void keepsTreeShape() throws Exception {
+    SnapshotNode app = parseDump().get(0);
+    assertEquals(2, app.getChildren().size());
+    SnapshotNode list = app.getChildren().get(0);
+    assertEquals("android.widget.ListView", list.getClassName());
+    assertEquals(2, list.getChildren().size());
+    for (SnapshotNode row : list.getChildren()) {
+      assertTrue(row.getChildren().isEmpty());
+    }
+    assertSame(list, app.findByClassSuffix("ListView"));
+    assertEquals(1, parseDump().get(1).getChildren().size());
+  }
+
+  /**
+   * Bounds are parsed, including negative coordinates, and missing bounds are empty.
+   *
+   * @throws Exception Parsing fails
+   */
+  @Test
+  public void parsesBounds() throws Exception {
+    List<SnapshotNode> roots = parseDump();
+    assertArrayEquals(new int[]{0, 0, 1080, 1920}, roots.get(0).getBounds());
+    assertArrayEquals(new int[]{0, 210, 1080, 1794},
+        roots.get(0).getChildren().get(0).getBounds());
+    assertArrayEquals(new int[]{-12, 1794, 1092, 1920},
+        roots.get(0).getChildren().get(1).getBounds());
+    assertArrayEquals(new int[]{0, 0, 0, 0}, roots.get(2).getBounds());
+  }
+
+  /**
+   * Texts, descriptions and resource names are parsed, with entities decoded.
+   *
+   * @throws Exception Parsing fails
+   */
+  @Test
+  public void parsesTexts() throws Exception {
+    List<SnapshotNode> roots = parseDump();
+    List<SnapshotNode> rows = roots.get(0).getChildren().get(0).getChildren();
+    assertEquals("Privacy & Terms", rows.get(0).getText());
+    assertEquals("", rows.get(0).getDescription());
+    assertEquals("Einstellungen", rows.get(1).getText());
+    assertEquals("Settings", rows.get(1).getDescription());
+    assertEquals("com.example.shop:id/row", rows.get(1).getResourceName());
+    assertEquals("More options", roots.get(0).getChildren().get(1).getDescription());
+    assertEquals("12:30", roots.get(1).getChildren().get(0).getText());
+  }
+
+  /**
+   * Clickable and scrollable flags are parsed.
+   *
+   * @throws Exception Parsing fails
+   */
+  @Test
+  public void parsesFlags() throws Exception {
+    List<SnapshotNode> roots = parseDump();
+    SnapshotNode app = roots.get(0);
+    SnapshotNode list = app.getChildren().get(0);
+    assertFalse(app.isClickable());
+    assertFalse(app.isScrollable());
+    assertFalse(list.isClickable());
+    assertTrue(list.isScrollable());
+    assertTrue(list.getChildren().get(0).isClickable());
+    assertFalse(list.getChildren().get(0).isScrollable());
+    assertTrue(app.getChildren().get(1).isClickable());
+    assertFalse(roots.get(1).getChildren().get(0).isClickable());
+    assertTrue(roots.get(2).getChildren().get(0).isClickable());
+  }
+
+  /**
+   * Malformed dumps are reported.
+   *
+   * @throws Exception Parsing fails otherwise
+   */
+  @Test(expected = DroidException.class)
+  public void rejectsMalformedDump() throws Exception {
+    SnapshotParser.parse(new ByteArrayInputStream(
+        "<hierarchy><node class=\"a\">".getBytes(StandardCharsets.UTF_8)));
+  }
+
+}
@@ -0,0 +1,130 @@
+package com.github.cheapmon.apc.droid.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+/**
+ * Test scoring of texts against the original keyword counting.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class PolicyScorerTest {
+
+  /**
+   * Keywords of privacy policies, like in search helper
+   */
+  private static final String[] KEYWORDS = {"privacy", "policy", "policies", "data", "term",
+      "condition", "use", "tos", "tou", "pp", "collect", "eula", "legal", "personal", "save",
+      "store", "daten", "schutz", "erklärung", "agb", "dse", "allgemeine", "geschäft",
+      "bedingung", "richt", "linie", "information", "erheben", "sammeln", "verarbeiten",
+      "erhoben", "speichern", "erfassen", "persönlich"};
+
+  /**
+   * Words of generated texts, mixing case, umlauts, overlapping keywords and blank runs
+   */
+  private static final String[] VOCABULARY = {"the", "PRIVACY", "Policy", "dataset", "ppp",
+      "Erklärung", "GESCHÄFT", "useless", "x", "tostou", "a  b", "storesave", "termin", " ",
+      "  "};
+
+  /**
+   * Minimum number of words of a policy
+   */
+  private static final int WORD_THRESHOLD = 500;
+
+  /**
+   * Minimum ratio of keyword matches to words of a policy
+   */
+  private static final double RATIO_THRESHOLD = 0.04;
+
+  /**
+   * Decide whether a text is a policy the way search helper did before the automaton.
+   *
+   * @param text Some text
+   * @return True if text is a policy
+   */
+  private static boolean isPolicyByStringUtils(String text) {
+    double words = StringUtils.split(text, " ").length;
+    if (words > WORD_THRESHOLD) {
+      double matches = 0;
+      for (String keyword : KEYWORDS) {
+        matches += StringUtils.countMatches(text.toLowerCase(), keyword);
+        if (matches / words >= RATIO_THRESHOLD) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Generate a text of random words, with keywords at the given rate.
+   *
+   * @param random Source of randomness
+   * @param words Number of words
+   * @param bias Rate of keyword-like words
+   * @return Text
+   */
+  private static String generate(Random random, int words, double bias) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < words; i++) {
+      if (random.nextDouble() < bias) {
+        builder.append(VOCABULARY[1 + random.nextInt(VOCABULARY.length - 3)]);
+      } else {
+        builder.append(random.nextBoolean() ? "the" : "x");
+      }
+      builder.append(random.nextInt(10) == 0 ? "  " : " ");
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Scorer agrees with the original keyword counting on random texts.
+   */
+  @Test
+  public void agreesWithStringUtils() {
+    PolicyScorer scorer = new PolicyScorer(KEYWORDS, WORD_THRESHOLD, RATIO_THRESHOLD);
+    Random random = new Random(3);
+    int policies = 0;
+    for (int i = 0; i < 2000; i++) {
+      String text = generate(random, 300 + random.nextInt(900), random.nextDouble() * 0.2);
+      boolean expected = isPolicyByStringUtils(text);
+      assertEquals(text, expected, scorer.isPolicy(text));
+      if (expected) {
+        policies++;
+      }
+    }
+    assertTrue(policies > 0);
+    assertTrue(policies < 2000);
+  }
+
+  /**
+   * Short texts are no policies, however many keywords they contain.
+   */
+  @Test
+  public void rejectsShortTexts() {
+    PolicyScorer scorer = new PolicyScorer(KEYWORDS, WORD_THRESHOLD, RATIO_THRESHOLD);
+    assertFalse(scorer.isPolicy(""));
+    assertFalse(scorer.isPolicy("Privacy Policy"));
+  }
+
+  /**
+   * Texts are worth reading once they contain any keyword, and reading settles on a policy.
+   */
+  @Test
+  public void decidesReading() {
+    PolicyScorer scorer = new PolicyScorer(KEYWORDS, WORD_THRESHOLD, RATIO_THRESHOLD);
+    assertTrue(scorer.isWorthReading("Read our Privacy Policy"));
+    assertFalse(scorer.isWorthReading("Settings"));
+    StringBuilder policy = new StringBuilder();
+    for (int i = 0; i < 600; i++) {
+      policy.append(i % 10 == 0 ? "Datenschutz " : "word ");
+    }
+    assertTrue(scorer.isSettled(policy));
+    assertFalse(scorer.isSettled("Read our Privacy Policy"));
+  }
+}
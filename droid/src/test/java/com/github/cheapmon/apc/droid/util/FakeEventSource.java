@@ -0,0 +1,76 @@
+package com.github.cheapmon.apc.droid.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Event source driven by tests, with a clock that only moves when told to.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+class FakeEventSource implements EventSource {
+
+  /**
+   * Registered listeners
+   */
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Current time in milliseconds
+   */
+  private volatile long time;
+
+  /**
+   * Register listener for all events of this source.
+   *
+   * @param listener Listener to register
+   */
+  @Override
+  public void addListener(Listener listener) {
+    this.listeners.add(listener);
+  }
+
+  /**
+   * Unregister listener.
+   *
+   * @param listener Listener to unregister
+   */
+  @Override
+  public void removeListener(Listener listener) {
+    this.listeners.remove(listener);
+  }
+
+  /**
+   * Get time set by the test.
+   *
+   * @return Current time in milliseconds
+   */
+  @Override
+  public long now() {
+    return this.time;
+  }
+
+  /**
+   * Set current time.
+   *
+   * @param time Time in milliseconds
+   */
+  void setTime(long time) {
+    this.time = time;
+  }
+
+  /**
+   * Move clock to a time and send an event stamped with it to all listeners.
+   *
+   * @param type Event type
+   * @param packageName Package of application the event originates from
+   * @param time Time of event in milliseconds
+   */
+  void emit(int type, String packageName, long time) {
+    this.time = time;
+    for (Listener listener : this.listeners) {
+      listener.onEvent(type, packageName, null, time);
+    }
+  }
+
+}
@@ -0,0 +1,184 @@
+package com.github.cheapmon.apc.droid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.view.accessibility.AccessibilityEvent;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test settle detection with a fake event source and clock.<br><br>
+ *
+ * The detector waits on a separate thread while the test moves the clock and sends events.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class SettleDetectorTest {
+
+  /**
+   * Event type changing window content
+   */
+  private static final int SCROLLED = AccessibilityEvent.TYPE_VIEW_SCROLLED;
+
+  /**
+   * Package of application under test
+   */
+  private static final String APP = "com.example.shop";
+
+  /**
+   * Hard limit for waiting in milliseconds
+   */
+  private static final long MAX_WAIT = 1000;
+
+  /**
+   * Real time to give the waiting thread before checking that it still waits
+   */
+  private static final long GRACE = 50;
+
+  /**
+   * Fake event source
+   */
+  private FakeEventSource source;
+
+  /**
+   * Detector under test
+   */
+  private SettleDetector detector;
+
+  /**
+   * Thread waiting for the detector
+   */
+  private ExecutorService waiter;
+
+  /**
+   * Create detector on fresh fake source.
+   */
+  @Before
+  public void setUp() {
+    this.source = new FakeEventSource();
+    this.detector = new SettleDetector(this.source, MAX_WAIT);
+    this.waiter = Executors.newSingleThreadExecutor();
+  }
+
+  /**
+   * Stop waiting thread.
+   */
+  @After
+  public void tearDown() {
+    this.waiter.shutdownNow();
+  }
+
+  /**
+   * Arm detector at the current time and wait for it on the waiting thread.
+   *
+   * @return Result of waiting
+   */
+  private Future<Boolean> armAndWait() {
+    this.detector.arm();
+    return this.waiter.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return SettleDetectorTest.this.detector.awaitSettled();
+      }
+    });
+  }
+
+  /**
+   * Waiting ends once events have stopped for the quiet window, before the idle timeout.
+   *
+   * @throws Exception Waiting fails
+   */
+  @Test
+  public void quietWindowEndsWait() throws Exception {
+    long quiet = this.detector.getQuietWindow();
+    long idle = this.detector.getIdleTimeout();
+    Future<Boolean> settled = this.armAndWait();
+    this.source.emit(SCROLLED, APP, 10);
+    this.source.emit(SCROLLED, APP, 20);
+    this.source.emit(SCROLLED, APP, 30);
+    assertTrue(30 + quiet < idle);
+    this.source.setTime(30 + quiet - 1);
+    Thread.sleep(GRACE);
+    assertFalse(settled.isDone());
+    this.source.setTime(30 + quiet);
+    assertTrue(settled.get(5, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Without any event, waiting ends at the idle timeout.
+   *
+   * @throws Exception Waiting fails
+   */
+  @Test
+  public void idleTimeoutEndsWaitWithoutEvents() throws Exception {
+    long idle = this.detector.getIdleTimeout();
+    long version = this.detector.getVersion();
+    Future<Boolean> settled = this.armAndWait();
+    this.source.setTime(idle - 1);
+    Thread.sleep(GRACE);
+    assertFalse(settled.isDone());
+    this.source.setTime(idle);
+    assertTrue(settled.get(5, TimeUnit.SECONDS));
+    assertEquals(version, this.detector.getVersion());
+    assertEquals(idle, this.detector.getIdleTimeout());
+  }
+
+  /**
+   * A constant stream of events never settles, waiting ends at the hard limit.
+   *
+   * @throws Exception Waiting fails
+   */
+  @Test
+  public void hardLimitHoldsUnderConstantEvents() throws Exception {
+    long quiet = this.detector.getQuietWindow();
+    long idle = this.detector.getIdleTimeout();
+    Future<Boolean> settled = this.armAndWait();
+    for (long time = 10; time < MAX_WAIT; time += 10) {
+      this.source.emit(SCROLLED, APP, time);
+    }
+    Thread.sleep(GRACE);
+    assertFalse(settled.isDone());
+    this.source.emit(SCROLLED, APP, MAX_WAIT);
+    assertFalse(settled.get(5, TimeUnit.SECONDS));
+    assertEquals(quiet, this.detector.getQuietWindow());
+    assertEquals(idle, this.detector.getIdleTimeout());
+  }
+
+  /**
+   * Settled actions update the quiet window and idle timeout, irrelevant events are ignored.
+   */
+  @Test
+  public void learnAdaptsWindows() {
+    assertEquals(200, this.detector.getQuietWindow());
+    assertEquals(300, this.detector.getIdleTimeout());
+    this.detector.arm();
+    this.source.emit(AccessibilityEvent.TYPE_VIEW_FOCUSED, APP, 50);
+    this.source.emit(SCROLLED, "com.android.systemui", 60);
+    assertEquals(0, this.detector.getVersion());
+    this.source.emit(SCROLLED, APP, 200);
+    this.source.setTime(200 + this.detector.getQuietWindow());
+    assertTrue(this.detector.awaitSettled());
+    assertEquals(1, this.detector.getVersion());
+    // latency 100 + (200 - 100) / 4 = 125, gap 100 + (0 - 100) / 4 = 75
+    assertEquals(375, this.detector.getIdleTimeout());
+    assertEquals(150, this.detector.getQuietWindow());
+    this.source.setTime(1000);
+    this.detector.arm();
+    this.source.emit(SCROLLED, APP, 1100);
+    this.source.emit(SCROLLED, APP, 1180);
+    this.source.setTime(1180 + this.detector.getQuietWindow());
+    assertTrue(this.detector.awaitSettled());
+    // latency 125 + (100 - 125) / 4 = 118.75, gap 75 + (80 - 75) / 4 = 76.25
+    assertEquals(356, this.detector.getIdleTimeout());
+    assertEquals(153, this.detector.getQuietWindow());
+  }
+
+}
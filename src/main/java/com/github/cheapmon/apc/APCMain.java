@@ -3,13 +3,14 @@ package com.github.cheapmon.apc;
 import com.github.cheapmon.apc.failure.APCException;
 import com.github.cheapmon.apc.util.ADBConnector;
 import com.github.cheapmon.apc.util.CommandLineParser;
+import com.github.cheapmon.apc.util.DevicePool;
 
 /**
  * APC extracts privacy policies from Android applications.<br><br>
  *
  * Main pipeline: <ul>
  * <li>Parse command line options</li>
- * <li>Generate APK with Android test and load onto device</li>
+ * <li>Generate APK with Android test and load onto every device</li>
  * <li>Test classes extract policies or a model of the application</li>
  * <li>Retrieve and store extracted information</li>
  * </ul><br><br>
@@ -31,10 +32,7 @@ public class APCMain {
   public static void main(String[] args) throws APCException {
     APCOptions options = CommandLineParser.parse(args);
     ADBConnector.buildDroid(options.getRebuild());
-    ADBConnector connector = new ADBConnector(options.getDevice());
-    connector.install();
-    connector.runTests(options);
-    connector.remove();
+    new DevicePool(options).run();
   }
 
 }
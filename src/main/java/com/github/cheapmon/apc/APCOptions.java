@@ -20,7 +20,7 @@ public class APCOptions {
    * Search algorithms used by APC
    */
   public enum Algorithm {
-    BFS, DFS, RS, OS
+    BFS, DFS, RS, OS, BEST
   }
 
   /**
@@ -34,9 +34,9 @@ public class APCOptions {
   private ExtractionMode extractionMode;
 
   /**
-   * Device extraction is run on
+   * Devices extraction is run on
    */
-  private String device;
+  private String[] devices;
 
   /**
    * Search algorithm used to extract
@@ -48,6 +48,26 @@ public class APCOptions {
    */
   private boolean rebuild;
 
+  /**
+   * Whether to keep test files installed on devices after extraction
+   */
+  private boolean keep;
+
+  /**
+   * Whether to resume an interrupted run
+   */
+  private boolean resume;
+
+  /**
+   * Locales of navigation keywords, separated by commas
+   */
+  private String locales;
+
+  /**
+   * Number of equivalent views clicked, e.g. of rows of a list, 0 to click all
+   */
+  private int sampleSize;
+
   /**
    * Get path to file with application IDs.
    *
@@ -85,21 +105,21 @@ public class APCOptions {
   }
 
   /**
-   * Get device in use.
+   * Get devices in use.
    *
-   * @return Chosen device
+   * @return Chosen devices
    */
-  public String getDevice() {
-    return this.device;
+  public String[] getDevices() {
+    return this.devices;
   }
 
   /**
-   * Set device to use.
+   * Set devices to use.
    *
-   * @param device New device
+   * @param devices New devices
    */
-  public void setDevice(String device) {
-    this.device = device;
+  public void setDevices(String[] devices) {
+    this.devices = devices;
   }
 
   /**
@@ -138,4 +158,76 @@ public class APCOptions {
     this.rebuild = rebuild;
   }
 
+  /**
+   * Get whether to keep test files installed on devices.
+   *
+   * @return Keep or not
+   */
+  public boolean getKeep() {
+    return this.keep;
+  }
+
+  /**
+   * Set whether to keep test files installed on devices.
+   *
+   * @param keep Keep or not
+   */
+  public void setKeep(boolean keep) {
+    this.keep = keep;
+  }
+
+  /**
+   * Get whether to resume an interrupted run.
+   *
+   * @return Resume or not
+   */
+  public boolean getResume() {
+    return this.resume;
+  }
+
+  /**
+   * Set whether to resume an interrupted run.
+   *
+   * @param resume Resume or not
+   */
+  public void setResume(boolean resume) {
+    this.resume = resume;
+  }
+
+  /**
+   * Get locales of navigation keywords.
+   *
+   * @return Locales, separated by commas
+   */
+  public String getLocales() {
+    return this.locales;
+  }
+
+  /**
+   * Set locales of navigation keywords.
+   *
+   * @param locales Locales, separated by commas
+   */
+  public void setLocales(String locales) {
+    this.locales = locales;
+  }
+
+  /**
+   * Get number of equivalent views clicked.
+   *
+   * @return Sample size, 0 if all views are clicked
+   */
+  public int getSampleSize() {
+    return this.sampleSize;
+  }
+
+  /**
+   * Set number of equivalent views clicked.
+   *
+   * @param sampleSize Sample size, 0 to click all views
+   */
+  public void setSampleSize(int sampleSize) {
+    this.sampleSize = sampleSize;
+  }
+
 }
@@ -1,10 +1,5 @@
 package com.github.cheapmon.apc.failure;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.stream.Collectors;
-
 /**
  * Exception for failed system calls.<br><br>
  *
@@ -18,12 +13,10 @@ public class SystemCallException extends APCException {
    * Create new exception. Provide commands and error message.
    *
    * @param commands Commands of system call
-   * @param errorStream Error output of system call
+   * @param msg Error output of system call
    */
-  public SystemCallException(String[] commands, InputStream errorStream) {
+  public SystemCallException(String[] commands, String msg) {
     super(String.format("System call '%s' failed", String.join(" ", commands)));
-    String msg = new BufferedReader(new InputStreamReader(errorStream)).lines()
-        .collect(Collectors.joining("\n"));
     System.err.println(String.format("\nSomething went wrong:\n%s\n", msg));
   }
 
@@ -1,23 +1,20 @@
 package com.github.cheapmon.apc.util;
 
 import com.github.cheapmon.apc.APCOptions;
-import com.github.cheapmon.apc.APCOptions.ExtractionMode;
 import com.github.cheapmon.apc.failure.APCException;
 import com.github.cheapmon.apc.failure.SystemCallException;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.gradle.tooling.GradleConnector;
@@ -26,6 +23,9 @@ import org.gradle.tooling.ProjectConnection;
 /**
  * Run commands on Android device by connecting to the Android Debug Bridge.<br><br>
  *
+ * Commands are sent to the ADB server directly. If the server cannot be reached, an {@code adb}
+ * process is started for every command instead.<br><br>
+ *
  * <ul>
  * <li>List devices</li>
  * <li>Connect to specific device</li>
@@ -43,17 +43,32 @@ public class ADBConnector {
    */
   private static final Path DROID = Paths.get(".", "droid");
 
+  /**
+   * Path to build directory of Android submodule
+   */
+  private static final Path BUILD = DROID.resolve("build");
+
   /**
    * Path to debug APK built by Android submodule
    */
-  private static final Path DEBUG_APK = Paths
-      .get(".", "droid", "build", "outputs", "apk", "droid-debug.apk");
+  private static final Path DEBUG_APK = BUILD
+      .resolve(Paths.get("outputs", "apk", "droid-debug.apk"));
 
   /**
    * Path to test APK built by Android submodule
    */
-  private static final Path TEST_APK = Paths
-      .get(".", "droid", "build", "outputs", "apk", "droid-debug-androidTest.apk");
+  private static final Path TEST_APK = BUILD
+      .resolve(Paths.get("outputs", "apk", "droid-debug-androidTest.apk"));
+
+  /**
+   * Package of debug APK
+   */
+  private static final String DEBUG_PACKAGE = "com.github.cheapmon.apc.droid";
+
+  /**
+   * Package of test APK
+   */
+  private static final String TEST_PACKAGE = "com.github.cheapmon.apc.droid.test";
 
   /**
    * Path to debug APK destination on remote device
@@ -66,22 +81,51 @@ public class ADBConnector {
   private static final String TEST_DEST = "/data/local/tmp/com.github.cheapmon.apc.droid.test";
 
   /**
-   * Path to id file on remote device
+   * Deadline for single commands in milliseconds
+   */
+  private static final long COMMAND_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+  /**
+   * Client for ADB server on this computer
    */
-  private static final String ID_FILE = "/data/local/tmp/ids.txt";
+  private static final AdbClient ADB = new AdbClient("localhost", AdbClient.DEFAULT_PORT);
+
+  /**
+   * Content of local APKs, read once for all devices
+   */
+  private static final Map<Path, byte[]> CONTENTS = new HashMap<>();
+
+  /**
+   * Whether ADB server can be reached, {@code null} if not yet checked
+   */
+  private static Boolean adbAvailable;
 
   /**
    * Label of device for this connection
    */
   private final String device;
 
+  /**
+   * Port of result collector on host computer
+   */
+  private final int port;
+
+  /**
+   * Whether to keep APC installed after extraction
+   */
+  private final boolean keep;
+
   /**
    * Connect to remote device.
    *
    * @param device Device label
+   * @param port Port of result collector
+   * @param keep Whether to keep APC installed after extraction
    */
-  public ADBConnector(String device) {
+  public ADBConnector(String device, int port, boolean keep) {
     this.device = device;
+    this.port = port;
+    this.keep = keep;
   }
 
   /**
@@ -93,18 +137,34 @@ public class ADBConnector {
    * @throws APCException System call fails
    */
   public static String[] deviceList() throws APCException {
-    return new BufferedReader(new InputStreamReader(build("adb", "devices"))).lines().skip(1)
+    if (client() != null) {
+      return ADB.devices();
+    }
+    return Stream.of(build(COMMAND_TIMEOUT, null, "adb", "devices").split("\n")).skip(1)
         .filter(line -> line.contains("device")).map(line -> line.split("\\s+")[0])
         .toArray(String[]::new);
   }
 
   /**
-   * Build debugging and testing binary in Android submodule.
+   * Close connections to ADB server which are kept for reuse.
+   */
+  public static void disconnect() {
+    ADB.close();
+  }
+
+  /**
+   * Build debugging and testing binary in Android submodule.<br><br>
+   *
+   * The build is skipped if both binaries exist and no source file or build script has changed
+   * since the last successful build.
    *
    * @param rebuild Whether to rebuild test files
+   * @throws APCException Checking build inputs fails
    */
-  public static void buildDroid(boolean rebuild) {
-    if (rebuild || Files.notExists(DEBUG_APK)) {
+  public static void buildDroid(boolean rebuild) throws APCException {
+    BuildCache cache = new BuildCache(DROID.toAbsolutePath().normalize(),
+        BUILD.toAbsolutePath().normalize());
+    if (rebuild || !cache.isUpToDate(DEBUG_APK, TEST_APK)) {
       ProjectConnection connection = GradleConnector.newConnector()
           .forProjectDirectory(new File(DROID.toAbsolutePath().toString())).connect();
       try {
@@ -112,199 +172,311 @@ public class ADBConnector {
       } finally {
         connection.close();
       }
+      BuildCache.invalidate();
+      cache.update();
       APCLogger.info(ADBConnector.class, "Successfully built APK");
       APCLogger.space();
     } else {
-      APCLogger.info(ADBConnector.class, "APK already built, skipping");
+      APCLogger.info(ADBConnector.class, "APK up to date, skipping build");
       APCLogger.space();
     }
   }
 
   /**
-   * Install required APC test files on device.
+   * Install required APC test files on device.<br><br>
+   *
+   * APKs already installed with identical content are not transferred again.
    *
    * @throws APCException Installation fails
    */
   public void install() throws APCException {
-    File debugAPK = new File(DEBUG_APK.toAbsolutePath().toString());
-    File testAPK = new File(TEST_APK.toAbsolutePath().toString());
-    this.buildADB("push", debugAPK.getAbsolutePath(), DEBUG_DEST);
-    this.buildADB("shell", "pm", "install", "-t", "-r", DEBUG_DEST);
-    this.buildADB("push", testAPK.getAbsolutePath(), TEST_DEST);
-    this.buildADB("shell", "pm", "install", "-t", "-r", TEST_DEST);
-    APCLogger.info(ADBConnector.class, String.format("Installed APK on device %s", this.device));
+    boolean installed = false;
+    if (!this.isInstalled(DEBUG_PACKAGE, DEBUG_APK)) {
+      this.installAPK(DEBUG_APK, DEBUG_DEST);
+      installed = true;
+    }
+    if (!this.isInstalled(TEST_PACKAGE, TEST_APK)) {
+      this.installAPK(TEST_APK, TEST_DEST);
+      installed = true;
+    }
+    APCLogger.info(ADBConnector.class, String.format(installed ? "Installed APK on device %s"
+        : "APK already installed on device %s, skipping", this.device));
     APCLogger.space();
   }
 
   /**
-   * Remove APC files from device. Make sure all tests have stopped.
+   * Remove APC files from device. Make sure all tests have stopped.<br><br>
+   *
+   * If APC should be kept installed, it is only stopped.
    *
    * @throws APCException Removing fails
    */
   public void remove() throws APCException {
-    this.buildADB("shell", "am", "force-stop", "com.github.cheapmon.apc.droid");
-    this.buildADB("shell", "pm", "uninstall", "com.github.cheapmon.apc.droid");
-    this.buildADB("shell", "pm", "uninstall", "com.github.cheapmon.apc.droid.test");
-    APCLogger.info(ADBConnector.class, "Removed all APC files from device");
+    this.shell("am", "force-stop", DEBUG_PACKAGE);
+    if (this.keep) {
+      APCLogger.info(ADBConnector.class,
+          String.format("Kept APC installed on device %s", this.device));
+      APCLogger.space();
+      return;
+    }
+    this.shell("pm", "uninstall", DEBUG_PACKAGE);
+    this.shell("pm", "uninstall", TEST_PACKAGE);
+    APCLogger.info(ADBConnector.class,
+        String.format("Removed all APC files from device %s", this.device));
     APCLogger.space();
   }
 
   /**
-   * Run APC tests on device.
+   * Run APC tests on device and wait for them to finish.<br><br>
+   *
+   * The device requests application IDs from the shared queue one at a time and sends its results
+   * to the result collector running on the host computer.
    *
    * @param options Options for extraction
    * @throws APCException Tests fail
    */
   public void runTests(APCOptions options) throws APCException {
-    Path filePath = options.getFile().toAbsolutePath();
-    String fileName = options.getFile().getFileName().toString();
-    APCLogger.info(ADBConnector.class, "Loading tests onto device");
-    this.buildADB("push", filePath.toString(), ID_FILE);
-    this.spawnTests(options);
-    this.collect(options.getExtractionMode() == ExtractionMode.MODEL);
+    APCLogger.info(ADBConnector.class, String.format("Loading tests onto device %s", this.device));
+    String mode = options.getExtractionMode().toString();
+    String algorithm = options.getAlgorithm().toString();
+    String test = "com.github.cheapmon.apc.droid.DroidMain#main";
+    String runner = "com.github.cheapmon.apc.droid.test/android.support.test.runner.AndroidJUnitRunner";
+    this.shell(line -> APCLogger.debug(ADBConnector.class, line), 0,
+        "am", "instrument", "-w", "-r",
+        "--no-window-animation",
+        "-e", "mode", mode,
+        "-e", "algorithm", algorithm,
+        "-e", "debug", "false",
+        "-e", "port", String.valueOf(this.port),
+        "-e", "device", this.device,
+        "-e", "locales", options.getLocales(),
+        "-e", "sample", String.valueOf(options.getSampleSize()),
+        "-e", "class", test, runner);
+    APCLogger.info(ADBConnector.class, String.format("Finished on device %s", this.device));
+    APCLogger.space();
+  }
+
+  /**
+   * Check whether package is installed on device from the same APK as the local one.<br><br>
+   *
+   * Devices without {@code sha256sum} are treated as if the package was not installed.
+   *
+   * @param pkg Package name
+   * @param local Path to local APK
+   * @return Package is installed and up to date
+   * @throws APCException Hashing local APK fails
+   */
+  private boolean isInstalled(String pkg, Path local) throws APCException {
+    String hash = BuildCache.hash(local);
     try {
-      if (fileName.equals("ids.txt")) {
-        Files.delete(filePath);
+      String path = this.shell("pm", "path", pkg).trim();
+      if (!path.startsWith("package:")) {
+        return false;
       }
-    } catch (IOException ex) {
-      throw new APCException("Deleting id file failed", ex);
+      String remote = this.shell("sha256sum", path.split("\\s+")[0].substring(8)).trim();
+      return remote.startsWith(hash);
+    } catch (SystemCallException ex) {
+      return false;
     }
-    APCLogger.info(ADBConnector.class, "Finished");
-    APCLogger.space();
   }
 
   /**
-   * Spawn test runnable to work in background. <br><br>
+   * Install local APK on device.<br><br>
    *
-   * App ids and additional configuration is sent.
+   * The APK is streamed into the package manager. Devices whose package manager cannot read from
+   * its input get the APK pushed to a temporary destination first.
    *
-   * @param options Options for extraction
+   * @param local Path to local APK
+   * @param remote Temporary path on device, only used as fallback
+   * @throws APCException Installation fails
    */
-  private void spawnTests(APCOptions options) {
-    String mode = options.getExtractionMode().toString();
-    String algorithm = options.getAlgorithm().toString();
-    String test = "com.github.cheapmon.apc.droid.DroidMain#main";
-    String runner = "com.github.cheapmon.apc.droid.test/android.support.test.runner.AndroidJUnitRunner";
-    Runnable r = () -> {
-      try {
-        InputStream stream = this.buildADB("shell", "am", "instrument", "-w", "-r",
-            "--no-window-animation",
-            "-e", "file", ID_FILE,
-            "-e", "mode", mode,
-            "-e", "algorithm", algorithm,
-            "-e", "debug", "false",
-            "-e", "class", test, runner);
-        APCLogger
-            .debug(ADBConnector.class, new BufferedReader(new InputStreamReader(stream)).lines()
-                .collect(Collectors.joining("\n")));
-      } catch (APCException ex) {
-        APCLogger.debug(ADBConnector.class, ex.getMessage());
+  private void installAPK(Path local, String remote) throws APCException {
+    if (client() == null) {
+      String output = this.buildADB(COMMAND_TIMEOUT, null, "install", "-r", "-t",
+          local.toAbsolutePath().toString());
+      if (output.contains("Failure")) {
+        throw new APCException(String.format("Installing %s failed: %s", local, output.trim()));
       }
-    };
-    new Thread(r).start();
+      return;
+    }
+    APCLogger.debug(ADBConnector.class,
+        String.format("stream install %s on %s", local, this.device));
+    String output = ADB.install(this.device, read(local), COMMAND_TIMEOUT);
+    if (output.contains("Success")) {
+      return;
+    }
+    if (output.contains("Failure [")) {
+      throw new APCException(String.format("Installing %s failed: %s", local, output.trim()));
+    }
+    APCLogger.debug(ADBConnector.class,
+        String.format("Streamed install not supported on %s: %s", this.device, output.trim()));
+    this.push(local.toAbsolutePath(), remote);
+    this.installPushed(remote);
   }
 
   /**
-   * Collect model information sent to localhost.
+   * Install APK which has been pushed to device before.
    *
-   * @throws APCException Socket communication fails
+   * @param remote Path to APK on device
+   * @throws APCException Installation fails
    */
-  private void collect(boolean model) throws APCException {
-    try {
-      ServerSocket serverSocket = new ServerSocket(2000);
-      outer:
-      while (true) {
-        ArrayList<String> inList = new ArrayList<>(2);
-        Socket clientSocket = serverSocket.accept();
-        BufferedReader clientIn = new BufferedReader(
-            new InputStreamReader(clientSocket.getInputStream()));
-        String in;
-        while ((in = clientIn.readLine()) != null) {
-          switch (in = in.trim()) {
-            case "OK":
-              clientSocket.close();
-              serverSocket.close();
-              break outer;
-            case "---":
-              this.writeFile(inList, model);
-              break;
-            default:
-              inList.add(in);
-          }
+  private void installPushed(String remote) throws APCException {
+    String output = this.shell("pm", "install", "-t", "-r", remote);
+    if (output.contains("Failure")) {
+      throw new APCException(String.format("Installing %s failed: %s", remote, output.trim()));
+    }
+  }
+
+  /**
+   * Push local file to device.
+   *
+   * @param local Path to local file
+   * @param remote Path on device
+   * @throws APCException Transfer fails
+   */
+  private void push(Path local, String remote) throws APCException {
+    if (client() != null) {
+      APCLogger.debug(ADBConnector.class,
+          String.format("push %s %s on %s", local, remote, this.device));
+      ADB.push(this.device, local, remote);
+    } else {
+      this.buildADB(COMMAND_TIMEOUT, null, "push", local.toString(), remote);
+    }
+  }
+
+  /**
+   * Run shell command on device and wait for it to finish.
+   *
+   * @param command Command and arguments
+   * @return Output of command
+   * @throws APCException Running command fails
+   */
+  private String shell(String... command) throws APCException {
+    return this.shell(null, COMMAND_TIMEOUT, command);
+  }
+
+  /**
+   * Run shell command on device and wait for it to finish.<br><br>
+   *
+   * Output is read while the command runs and passed to the listener line by line.
+   *
+   * @param listener Listener for output lines, may be {@code null}
+   * @param timeout Deadline in milliseconds, 0 for none
+   * @param command Command and arguments
+   * @return Output of command
+   * @throws APCException Running command fails
+   */
+  private String shell(Consumer<String> listener, long timeout, String... command)
+      throws APCException {
+    if (client() != null) {
+      String line = String.join(" ", command);
+      APCLogger.debug(ADBConnector.class, String.format("shell %s on %s", line, this.device));
+      return await(ProcessRunner.read(ADB.shell(this.device, line, timeout), timeout, listener,
+          line));
+    }
+    return this.buildADB(timeout, listener,
+        Stream.concat(Stream.of("shell"), Arrays.stream(command)).toArray(String[]::new));
+  }
+
+  /**
+   * Get content of local file. Every file is read once and shared by all devices.
+   *
+   * @param local Path to local file
+   * @return Content of file
+   * @throws APCException Reading file fails
+   */
+  private static byte[] read(Path local) throws APCException {
+    Path key = local.toAbsolutePath().normalize();
+    synchronized (CONTENTS) {
+      byte[] content = CONTENTS.get(key);
+      if (content == null) {
+        try {
+          content = Files.readAllBytes(key);
+        } catch (IOException ex) {
+          throw new APCException(String.format("Reading %s failed", local), ex);
         }
-        clientSocket.close();
+        CONTENTS.put(key, content);
       }
-    } catch (IOException ex) {
-      throw new APCException("Collecting models failed", ex);
+      return content;
     }
   }
 
   /**
-   * Write extracted model to file.
+   * Get client for ADB server if it can be reached.<br><br>
+   *
+   * If the server is not running, it is started once.
    *
-   * @param lines Lines of output file
-   * @throws APCException Writing file fails
+   * @return Client or {@code null} if commands have to be run as processes
    */
-  private void writeFile(ArrayList<String> lines, boolean model) throws APCException {
-    try {
-      String idString = lines.get(0);
-      String modelString = String.join("\n", lines.subList(1, lines.size()));
-      File outFile;
-      if (model) {
-        outFile = new File(String.format("out/%s.xml", idString));
-      } else {
-        outFile = new File(String.format("out/%s.txt", idString));
-      }
-      boolean parentFile = outFile.getParentFile().mkdirs();
-      boolean success = outFile.createNewFile();
-      if (!parentFile && !success) {
-        throw new APCException("File creation failed");
+  private static synchronized AdbClient client() {
+    if (adbAvailable == null) {
+      adbAvailable = ADB.isAvailable();
+      if (!adbAvailable) {
+        try {
+          build(COMMAND_TIMEOUT, null, "adb", "start-server");
+          adbAvailable = ADB.isAvailable();
+        } catch (APCException ex) {
+          adbAvailable = false;
+        }
       }
-      PrintWriter out = new PrintWriter(new FileOutputStream(outFile.getAbsolutePath(), false));
-      out.println(modelString);
-      out.close();
-      lines.clear();
-      APCLogger.info(ADBConnector.class,
-          String.format("Output was written to %s", outFile.getPath()));
-    } catch (IOException ex) {
-      throw new APCException("Writing output failed", ex);
+      APCLogger.debug(ADBConnector.class, adbAvailable ? "Connected to ADB server"
+          : "ADB server not reachable, running adb processes");
     }
+    return adbAvailable ? ADB : null;
   }
 
   /**
    * Run ADB command on device.
    *
+   * @param timeout Deadline in milliseconds, 0 for none
+   * @param listener Listener for output lines, may be {@code null}
    * @param commands Android Debug Bridge commands to run
-   * @return Output or error of finished process
-   * @throws APCException Building process fails
+   * @return Output of finished process
+   * @throws APCException Process fails
    */
-  private InputStream buildADB(String... commands) throws APCException {
-    return build(Stream
+  private String buildADB(long timeout, Consumer<String> listener, String... commands)
+      throws APCException {
+    return build(timeout, listener, Stream
         .concat(Arrays.stream(new String[]{"adb", "-s", this.device}), Arrays.stream(commands))
         .toArray(String[]::new));
   }
 
   /**
-   * Create a process from system call.
+   * Create a process from system call and wait for it to finish.
    *
+   * @param timeout Deadline in milliseconds, 0 for none
+   * @param listener Listener for output lines, may be {@code null}
    * @param commands System commands to run
-   * @return Output or error of finished process
-   * @throws APCException Building process fails
+   * @return Output of finished process
+   * @throws APCException Process fails
    */
-  private static InputStream build(String... commands) throws APCException {
+  private static String build(long timeout, Consumer<String> listener, String... commands)
+      throws APCException {
     APCLogger.debug(ADBConnector.class, Stream.of(commands).collect(Collectors.joining(" ")));
+    ProcessRunner.Result result = await(ProcessRunner.start(commands, timeout, listener));
+    if (result.getExitCode() == 0) {
+      return result.getOutput();
+    } else {
+      throw new SystemCallException(commands, result.getError());
+    }
+  }
+
+  /**
+   * Wait for an asynchronous system call.
+   *
+   * @param future Future result
+   * @param <T> Type of result
+   * @return Result
+   * @throws APCException System call fails, exceeds its deadline or waiting is interrupted
+   */
+  private static <T> T await(CompletableFuture<T> future) throws APCException {
     try {
-      Process process = new ProcessBuilder(commands).start();
-      InputStream output = process.getInputStream();
-      InputStream error = process.getErrorStream();
-      int exitCode = process.waitFor();
-      if (exitCode == 0) {
-        return output;
-      } else {
-        throw new SystemCallException(commands, error);
-      }
-    } catch (InterruptedException | IOException ex) {
-      throw new APCException("Building process for system call failed", ex);
+      return future.get();
+    } catch (ExecutionException ex) {
+      throw (ex.getCause() instanceof APCException) ? (APCException) ex.getCause()
+          : new APCException("System call failed", ex.getCause());
+    } catch (InterruptedException ex) {
+      throw new APCException("Waiting for system call failed", ex);
     }
   }
 
@@ -69,13 +69,14 @@ class APCLogger {
   /**
    * Write log for a given class, on a given level.<br><br>
    *
-   * Keeps track of already instantiated loggers.
+   * Keeps track of already instantiated loggers. Devices log concurrently, so access is
+   * synchronized.
    *
    * @param klass Given class
    * @param msg Message to log
    * @param level Given level
    */
-  private static void log(Class<?> klass, String msg, Level level) {
+  private static synchronized void log(Class<?> klass, String msg, Level level) {
     for (Logger logger : loggerList) {
       if (logger.getName().equals(klass.getName())) {
         logger.log(level, msg);
@@ -0,0 +1,499 @@
+package com.github.cheapmon.apc.util;
+
+import com.github.cheapmon.apc.failure.APCException;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Client for the protocol of the Android Debug Bridge server.<br><br>
+ *
+ * Talks to the ADB server directly instead of starting an {@code adb} process for every command.
+ * Supported services:
+ *
+ * <ul>
+ * <li>{@code host:devices} and {@code host:track-devices}</li>
+ * <li>{@code host:transport:<serial>} to select a device</li>
+ * <li>{@code shell:} to run commands on a device</li>
+ * <li>{@code sync:} to push and pull files</li>
+ * </ul>
+ *
+ * Every command opens its own socket, so commands to several devices may run concurrently. Sync
+ * sessions are kept open and reused for following transfers to the same device.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+class AdbClient {
+
+  /**
+   * Default port of ADB server
+   */
+  static final int DEFAULT_PORT = 5037;
+
+  /**
+   * Maximum size of a single sync data chunk
+   */
+  private static final int SYNC_DATA_MAX = 64 * 1024;
+
+  /**
+   * Default file mode for pushed files
+   */
+  private static final int FILE_MODE = 0100644;
+
+  /**
+   * Host of ADB server
+   */
+  private final String host;
+
+  /**
+   * Port of ADB server
+   */
+  private final int port;
+
+  /**
+   * Idle sync sessions per device
+   */
+  private final Map<String, ConcurrentLinkedQueue<Socket>> syncSessions =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Create client for an ADB server.
+   *
+   * @param host Host of ADB server
+   * @param port Port of ADB server
+   */
+  AdbClient(String host, int port) {
+    this.host = host;
+    this.port = port;
+  }
+
+  /**
+   * Check whether the ADB server can be reached.
+   *
+   * @return Whether server is running
+   */
+  boolean isAvailable() {
+    try (Socket socket = this.connect()) {
+      this.request(socket, "host:version");
+      return true;
+    } catch (IOException | APCException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * List labels of all devices which are ready to use.
+   *
+   * @return Device labels
+   * @throws APCException Communication with ADB server fails
+   */
+  String[] devices() throws APCException {
+    try (Socket socket = this.connect()) {
+      this.request(socket, "host:devices");
+      return parseDevices(readString(new DataInputStream(socket.getInputStream())));
+    } catch (IOException ex) {
+      throw new APCException("Listing devices failed", ex);
+    }
+  }
+
+  /**
+   * Track devices attached to the computer.<br><br>
+   *
+   * The listener is called from a background thread with the current list of ready devices, once
+   * immediately and again on every change.
+   *
+   * @param listener Listener for device list
+   * @return Handle to stop tracking
+   * @throws APCException Communication with ADB server fails
+   */
+  Closeable trackDevices(Consumer<String[]> listener) throws APCException {
+    try {
+      Socket socket = this.connect();
+      this.request(socket, "host:track-devices");
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      Thread thread = new Thread(() -> {
+        try {
+          while (true) {
+            listener.accept(parseDevices(readString(in)));
+          }
+        } catch (IOException ex) {
+          APCLogger.debug(AdbClient.class, "Stopped tracking devices");
+        }
+      }, "AdbClient-track");
+      thread.setDaemon(true);
+      thread.start();
+      return socket;
+    } catch (IOException ex) {
+      throw new APCException("Tracking devices failed", ex);
+    }
+  }
+
+  /**
+   * Run shell command on device.<br><br>
+   *
+   * The returned stream contains the output of the command and ends when the command has
+   * finished. It has to be closed by the caller.
+   *
+   * @param serial Device label
+   * @param command Command to run
+   * @param timeout Maximum time in milliseconds without output, 0 for none. The deadline for the
+   *     whole command is enforced by the reader, see {@link ProcessRunner#read}
+   * @return Output of command
+   * @throws APCException Communication with ADB server fails
+   */
+  InputStream shell(String serial, String command, long timeout) throws APCException {
+    Socket socket = null;
+    try {
+      socket = this.transport(serial);
+      socket.setSoTimeout((int) timeout);
+      this.request(socket, String.format("shell:%s", command));
+      return socket.getInputStream();
+    } catch (IOException | APCException ex) {
+      closeQuietly(socket);
+      throw new APCException(String.format("Running '%s' on %s failed", command, serial), ex);
+    }
+  }
+
+  /**
+   * Push local file to device.
+   *
+   * @param serial Device label
+   * @param local Path to local file
+   * @param remote Path on device
+   * @throws APCException Transfer fails
+   */
+  void push(String serial, Path local, String remote) throws APCException {
+    Socket socket = this.sync(serial);
+    try (InputStream file = Files.newInputStream(local)) {
+      OutputStream out = new BufferedOutputStream(socket.getOutputStream(), SYNC_DATA_MAX + 8);
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      byte[] path = String.format("%s,%s", remote, FILE_MODE).getBytes(StandardCharsets.UTF_8);
+      writeSync(out, "SEND", path.length);
+      out.write(path);
+      byte[] chunk = new byte[SYNC_DATA_MAX];
+      int n;
+      while ((n = file.read(chunk)) > 0) {
+        writeSync(out, "DATA", n);
+        out.write(chunk, 0, n);
+      }
+      writeSync(out, "DONE", (int) (Files.getLastModifiedTime(local).toMillis() / 1000));
+      out.flush();
+      this.checkSync(in);
+      this.release(serial, socket);
+    } catch (IOException | APCException ex) {
+      closeQuietly(socket);
+      throw new APCException(String.format("Pushing %s to %s failed", local, serial), ex);
+    }
+  }
+
+  /**
+   * Install APK on device by streaming its content into the package manager.<br><br>
+   *
+   * Nothing is written to temporary storage on the device, the package manager reads the APK
+   * from its standard input. The same content can be installed on several devices at once.
+   *
+   * @param serial Device label
+   * @param apk Content of APK
+   * @param timeout Maximum time in milliseconds to wait for the package manager, 0 for none
+   * @return Output of package manager
+   * @throws APCException Transfer fails
+   */
+  String install(String serial, byte[] apk, long timeout) throws APCException {
+    String command = String.format("pm install -r -t -S %s", apk.length);
+    Socket socket = null;
+    try {
+      socket = this.transport(serial);
+      socket.setSoTimeout((int) timeout);
+      this.request(socket, String.format("exec:%s", command));
+      OutputStream out = socket.getOutputStream();
+      for (int offset = 0; offset < apk.length; offset += SYNC_DATA_MAX) {
+        out.write(apk, offset, Math.min(SYNC_DATA_MAX, apk.length - offset));
+      }
+      out.flush();
+      InputStream in = socket.getInputStream();
+      StringBuilder output = new StringBuilder();
+      byte[] chunk = new byte[1024];
+      for (int n = in.read(chunk); n != -1; n = in.read(chunk)) {
+        output.append(new String(chunk, 0, n, StandardCharsets.UTF_8));
+      }
+      return output.toString();
+    } catch (IOException | APCException ex) {
+      throw new APCException(String.format("Running '%s' on %s failed", command, serial), ex);
+    } finally {
+      closeQuietly(socket);
+    }
+  }
+
+  /**
+   * Pull file from device.
+   *
+   * @param serial Device label
+   * @param remote Path on device
+   * @param local Path to local file
+   * @throws APCException Transfer fails
+   */
+  void pull(String serial, String remote, Path local) throws APCException {
+    Socket socket = this.sync(serial);
+    try (OutputStream file = Files.newOutputStream(local)) {
+      OutputStream out = socket.getOutputStream();
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      byte[] path = remote.getBytes(StandardCharsets.UTF_8);
+      writeSync(out, "RECV", path.length);
+      out.write(path);
+      out.flush();
+      byte[] chunk = new byte[SYNC_DATA_MAX];
+      while (true) {
+        String id = readId(in);
+        int length = readLittleEndian(in);
+        if (id.equals("DONE")) {
+          break;
+        }
+        if (id.equals("FAIL")) {
+          throw new APCException(readFully(in, length));
+        }
+        if (!id.equals("DATA") || length > SYNC_DATA_MAX) {
+          throw new IOException(String.format("Unexpected sync response %s", id));
+        }
+        in.readFully(chunk, 0, length);
+        file.write(chunk, 0, length);
+      }
+      this.release(serial, socket);
+    } catch (IOException | APCException ex) {
+      closeQuietly(socket);
+      throw new APCException(String.format("Pulling %s from %s failed", remote, serial), ex);
+    }
+  }
+
+  /**
+   * Close all idle sync sessions.
+   */
+  void close() {
+    for (ConcurrentLinkedQueue<Socket> idle : this.syncSessions.values()) {
+      for (Socket socket = idle.poll(); socket != null; socket = idle.poll()) {
+        try {
+          OutputStream out = socket.getOutputStream();
+          writeSync(out, "QUIT", 0);
+          out.flush();
+        } catch (IOException ignored) {
+        }
+        closeQuietly(socket);
+      }
+    }
+  }
+
+  /**
+   * Open socket to ADB server.
+   *
+   * @return Socket
+   * @throws IOException Connecting fails
+   */
+  private Socket connect() throws IOException {
+    return new Socket(this.host, this.port);
+  }
+
+  /**
+   * Open socket to ADB server and select device.
+   *
+   * @param serial Device label
+   * @return Socket connected to device
+   * @throws IOException Connecting fails
+   * @throws APCException Device cannot be selected
+   */
+  private Socket transport(String serial) throws IOException, APCException {
+    Socket socket = this.connect();
+    try {
+      this.request(socket, String.format("host:transport:%s", serial));
+      return socket;
+    } catch (IOException | APCException ex) {
+      closeQuietly(socket);
+      throw ex;
+    }
+  }
+
+  /**
+   * Get idle sync session for device or open a new one.
+   *
+   * @param serial Device label
+   * @return Socket in sync mode
+   * @throws APCException Opening session fails
+   */
+  private Socket sync(String serial) throws APCException {
+    ConcurrentLinkedQueue<Socket> idle = this.syncSessions.get(serial);
+    Socket socket = (idle == null) ? null : idle.poll();
+    if (socket != null) {
+      return socket;
+    }
+    try {
+      socket = this.transport(serial);
+      this.request(socket, "sync:");
+      return socket;
+    } catch (IOException ex) {
+      closeQuietly(socket);
+      throw new APCException(String.format("Opening sync session on %s failed", serial), ex);
+    }
+  }
+
+  /**
+   * Return sync session for reuse.
+   *
+   * @param serial Device label
+   * @param socket Socket in sync mode
+   */
+  private void release(String serial, Socket socket) {
+    this.syncSessions.computeIfAbsent(serial, s -> new ConcurrentLinkedQueue<>()).add(socket);
+  }
+
+  /**
+   * Send request to ADB server and check answer.
+   *
+   * @param socket Socket connected to ADB server
+   * @param request Request
+   * @throws IOException Communication fails
+   * @throws APCException ADB server reports failure
+   */
+  private void request(Socket socket, String request) throws IOException, APCException {
+    byte[] payload = request.getBytes(StandardCharsets.UTF_8);
+    OutputStream out = socket.getOutputStream();
+    out.write(String.format("%04x", payload.length).getBytes(StandardCharsets.US_ASCII));
+    out.write(payload);
+    out.flush();
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+    String status = readId(in);
+    if (status.equals("FAIL")) {
+      throw new APCException(String.format("ADB server refused '%s': %s", request,
+          readString(in)));
+    }
+    if (!status.equals("OKAY")) {
+      throw new IOException(String.format("Unexpected answer %s", status));
+    }
+  }
+
+  /**
+   * Check answer of ADB server to a sync request.
+   *
+   * @param in Input from ADB server
+   * @throws IOException Communication fails
+   * @throws APCException ADB server reports failure
+   */
+  private void checkSync(DataInputStream in) throws IOException, APCException {
+    String id = readId(in);
+    int length = readLittleEndian(in);
+    if (id.equals("FAIL")) {
+      throw new APCException(readFully(in, length));
+    }
+    if (!id.equals("OKAY")) {
+      throw new IOException(String.format("Unexpected sync response %s", id));
+    }
+  }
+
+  /**
+   * Parse device list sent by ADB server.
+   *
+   * @param list Device list, one device per line
+   * @return Labels of ready devices
+   */
+  private static String[] parseDevices(String list) {
+    List<String> devices = new ArrayList<>();
+    for (String line : list.split("\n")) {
+      String[] parts = line.trim().split("\\s+");
+      if (parts.length >= 2 && parts[1].equals("device")) {
+        devices.add(parts[0]);
+      }
+    }
+    return devices.toArray(new String[0]);
+  }
+
+  /**
+   * Write header of a sync request.
+   *
+   * @param out Output to ADB server
+   * @param id Request ID
+   * @param value Length or value
+   * @throws IOException Writing fails
+   */
+  private static void writeSync(OutputStream out, String id, int value) throws IOException {
+    out.write(id.getBytes(StandardCharsets.US_ASCII));
+    out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
+  }
+
+  /**
+   * Read four character ID.
+   *
+   * @param in Input from ADB server
+   * @return ID
+   * @throws IOException Reading fails
+   */
+  private static String readId(DataInputStream in) throws IOException {
+    return readFully(in, 4);
+  }
+
+  /**
+   * Read string prefixed with its length as four hex digits.
+   *
+   * @param in Input from ADB server
+   * @return String
+   * @throws IOException Reading fails
+   */
+  private static String readString(DataInputStream in) throws IOException {
+    try {
+      return readFully(in, Integer.parseInt(readFully(in, 4), 16));
+    } catch (NumberFormatException ex) {
+      throw new IOException("Invalid length", ex);
+    }
+  }
+
+  /**
+   * Read little endian integer.
+   *
+   * @param in Input from ADB server
+   * @return Integer
+   * @throws IOException Reading fails
+   */
+  private static int readLittleEndian(DataInputStream in) throws IOException {
+    return Integer.reverseBytes(in.readInt());
+  }
+
+  /**
+   * Read fixed number of bytes as string.
+   *
+   * @param in Input from ADB server
+   * @param length Number of bytes
+   * @return String
+   * @throws IOException Reading fails
+   */
+  private static String readFully(DataInputStream in, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Close socket, ignoring failures.
+   *
+   * @param socket Socket to close
+   */
+  private static void closeQuietly(Socket socket) {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+}
@@ -0,0 +1,203 @@
+package com.github.cheapmon.apc.util;
+
+import com.github.cheapmon.apc.failure.APCException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content fingerprints for build inputs and outputs.<br><br>
+ *
+ * The fingerprint of the Android submodule covers path and content of every source file and build
+ * script. It is stored next to the built APKs, so a build is only needed if any input has changed
+ * since the last successful build. Hashes of built APKs are compared with the APKs installed on a
+ * device to skip reinstalling unchanged files.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+class BuildCache {
+
+  /**
+   * Name of file holding fingerprint of last successful build
+   */
+  private static final String FINGERPRINT = "apc.fingerprint";
+
+  /**
+   * Size of buffer for hashing files
+   */
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Hashes of local files, computed once per run
+   */
+  private static final Map<Path, String> HASHES = new ConcurrentHashMap<>();
+
+  /**
+   * Root of Android submodule
+   */
+  private final Path root;
+
+  /**
+   * Build directory of Android submodule
+   */
+  private final Path build;
+
+  /**
+   * Create new cache for Android submodule.
+   *
+   * @param root Root of Android submodule
+   * @param build Build directory of Android submodule
+   */
+  BuildCache(Path root, Path build) {
+    this.root = root;
+    this.build = build;
+  }
+
+  /**
+   * Check whether outputs of last successful build match current inputs.
+   *
+   * @param outputs Built files which have to exist
+   * @return Build is up to date
+   * @throws APCException Reading inputs fails
+   */
+  boolean isUpToDate(Path... outputs) throws APCException {
+    if (Stream.of(outputs).anyMatch(Files::notExists)) {
+      return false;
+    }
+    Path stored = this.build.resolve(FINGERPRINT);
+    try {
+      return Files.exists(stored)
+          && new String(Files.readAllBytes(stored), StandardCharsets.UTF_8)
+          .equals(this.fingerprint());
+    } catch (IOException ex) {
+      throw new APCException("Reading build fingerprint failed", ex);
+    }
+  }
+
+  /**
+   * Remember current inputs after a successful build.
+   *
+   * @throws APCException Writing fingerprint fails
+   */
+  void update() throws APCException {
+    try {
+      Files.createDirectories(this.build);
+      Files.write(this.build.resolve(FINGERPRINT),
+          this.fingerprint().getBytes(StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      throw new APCException("Writing build fingerprint failed", ex);
+    }
+  }
+
+  /**
+   * Hash path and content of all inputs of the Android submodule.<br><br>
+   *
+   * Files are visited in sorted order, everything inside the build directory and hidden
+   * directories is ignored.
+   *
+   * @return Hex encoded fingerprint
+   * @throws APCException Reading inputs fails
+   */
+  String fingerprint() throws APCException {
+    MessageDigest digest = digest();
+    try (Stream<Path> files = Files.walk(this.root)) {
+      for (Path file : files.filter(Files::isRegularFile).filter(this::isInput).sorted()
+          .collect(Collectors.toList())) {
+        digest.update(this.root.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(hash(file).getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (IOException | UncheckedIOException ex) {
+      throw new APCException("Reading build inputs failed", ex);
+    }
+    return hex(digest.digest());
+  }
+
+  /**
+   * Get SHA-256 hash of file. Hashes are computed once and reused for every device.
+   *
+   * @param file Path to file
+   * @return Hex encoded hash
+   * @throws APCException Reading file fails
+   */
+  static String hash(Path file) throws APCException {
+    Path key = file.toAbsolutePath().normalize();
+    String hash = HASHES.get(key);
+    if (hash == null) {
+      MessageDigest digest = digest();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      try (InputStream in = Files.newInputStream(key)) {
+        for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+          digest.update(buffer, 0, n);
+        }
+      } catch (IOException ex) {
+        throw new APCException(String.format("Hashing %s failed", file), ex);
+      }
+      hash = hex(digest.digest());
+      HASHES.put(key, hash);
+    }
+    return hash;
+  }
+
+  /**
+   * Forget hashes of local files, e.g. after they have been rebuilt.
+   */
+  static void invalidate() {
+    HASHES.clear();
+  }
+
+  /**
+   * Check whether file is an input of the build.
+   *
+   * @param file Path to file
+   * @return File is an input
+   */
+  private boolean isInput(Path file) {
+    if (file.startsWith(this.build)) {
+      return false;
+    }
+    for (Path part : this.root.relativize(file)) {
+      if (part.toString().startsWith(".")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Create new SHA-256 digest.
+   *
+   * @return Digest
+   */
+  private static MessageDigest digest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException("SHA-256 not supported", ex);
+    }
+  }
+
+  /**
+   * Encode bytes as lower case hex string.
+   *
+   * @param bytes Bytes to encode
+   * @return Hex string
+   */
+  private static String hex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(String.format("%02x", b));
+    }
+    return builder.toString();
+  }
+
+}
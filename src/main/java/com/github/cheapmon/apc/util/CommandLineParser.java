@@ -26,7 +26,7 @@ import org.apache.commons.cli.ParseException;
  * <ul>
  * <li>Help message</li>
  * <li>User input (application identification)</li>
- * <li>Device to use</li>
+ * <li>Devices to use</li>
  * <li>Searching algorithm to use</li>
  * <li>(Model) extraction</li>
  * </ul>
@@ -35,6 +35,11 @@ import org.apache.commons.cli.ParseException;
  */
 public class CommandLineParser {
 
+  /**
+   * Languages keyword packs are shipped for
+   */
+  private static final String[] LOCALES = {"de", "en", "es", "fr"};
+
   /**
    * Parse options given by command line, check for validity, pass on for further use.
    *
@@ -54,25 +59,44 @@ public class CommandLineParser {
         throw new APCException("File does not exist");
       }
       ExtractionMode extractionMode = getMode(cl.hasOption("extract-model"));
-      String device = getDevice(cl.getOptionValue("device"));
+      String[] devices = getDevices(cl.getOptionValue("device"), cl.getOptionValue("jobs"));
       Algorithm algorithm = getAlgorithm(cl.getOptionValue("search"));
       boolean rebuild = cl.hasOption("clean");
+      boolean keep = cl.hasOption("keep");
+      boolean resume = cl.hasOption("resume");
+      String locales = getLocales(cl.getOptionValue("locales"));
+      int sampleSize = getSampleSize(cl.getOptionValue("sample"));
       options.setFile(file);
       options.setExtractionMode(extractionMode);
-      options.setDevice(device);
+      options.setDevices(devices);
       options.setAlgorithm(algorithm);
       options.setRebuild(rebuild);
+      options.setKeep(keep);
+      options.setResume(resume);
+      options.setLocales(locales);
+      options.setSampleSize(sampleSize);
       APCLogger.logo();
       APCLogger.space();
       APCLogger.info(CommandLineParser.class, String.format("* Found %s application ids",
           Files.lines(file).count()));
       APCLogger
           .info(CommandLineParser.class, String.format("* Extraction mode is %s", extractionMode));
-      APCLogger.info(CommandLineParser.class, String.format("* Using device %s", device));
+      APCLogger.info(CommandLineParser.class,
+          String.format("* Using device %s", String.join(", ", devices)));
       APCLogger.info(CommandLineParser.class, String.format("* Using %s", algorithm));
+      APCLogger.info(CommandLineParser.class,
+          String.format("* Navigation keywords for %s", locales));
+      APCLogger.info(CommandLineParser.class, String.format("* Clicking %s equivalent views",
+          (sampleSize > 0) ? sampleSize : "all"));
       if (rebuild) {
         APCLogger.info(CommandLineParser.class, "* Clean and Rebuild");
       }
+      if (keep) {
+        APCLogger.info(CommandLineParser.class, "* Keep tests installed");
+      }
+      if (resume) {
+        APCLogger.info(CommandLineParser.class, "* Resume interrupted run");
+      }
       APCLogger.space();
     } catch (ParseException ex) {
       printUsage(ex.getMessage());
@@ -94,10 +118,17 @@ public class CommandLineParser {
     options.addOption("h", "help", false, "This help message");
     options.addOption(Option.builder("i").longOpt("id").hasArgs().desc("App ids").build());
     options.addOption("f", "file", true, "File containing app ids");
-    options.addOption("d", "device", true, "Device to run extraction on");
+    options.addOption("d", "device", true, "Device to run extraction on, or \"all\"");
+    options.addOption("j", "jobs", true, "Number of devices to run extraction on in parallel");
     options.addOption("s", "search", true, "Search algorithm");
     options.addOption("m", "extract-model", false, "Extract model of app");
     options.addOption("c", "clean", false, "Rebuild tests");
+    options.addOption("k", "keep", false, "Keep tests installed on devices");
+    options.addOption("r", "resume", false, "Resume interrupted run");
+    options.addOption("l", "locales", true, "Languages of navigation keywords out of de, en, "
+        + "es and fr, e.g. \"de,en,fr\"");
+    options.addOption("n", "sample", true, "Number of equivalent views clicked, e.g. list rows, "
+        + "or 0 for all");
     return options;
   }
 
@@ -185,26 +216,31 @@ public class CommandLineParser {
   }
 
   /**
-   * Get device extraction is run on.<br><br>
+   * Get devices extraction is run on.<br><br>
    *
-   * Input is a device label. If none is given, defaults to first device in list. If no device is
-   * attached or the given label is incorrect, APC halts.
+   * Input is a device label, a comma-separated list of labels or "all". If none is given, defaults
+   * to the first device in list. A number of jobs limits the devices to the first {@code jobs}
+   * ones, including the given or all devices. If no device is attached or a given label is
+   * incorrect, APC halts.
    *
    * @param device Device label given by user
-   * @return Device label chosen by APC
+   * @param jobs Number of devices given by user
+   * @return Device labels chosen by APC
    * @throws APCException Communication with ADB fails
    */
-  private static String getDevice(String device) throws APCException {
+  private static String[] getDevices(String device, String jobs) throws APCException {
     String[] deviceList = ADBConnector.deviceList();
     if (deviceList.length == 0) {
       printUsage(
           "Please attach at least one Android device and check if Android debugging is active.");
     }
     if (device == null) {
-      return deviceList[0];
+      return Arrays.copyOf(deviceList, Math.min(getJobs(jobs), deviceList.length));
     }
-    if (Arrays.asList(deviceList).contains(device)) {
-      return device;
+    String[] devices = device.equalsIgnoreCase("all") ? deviceList : device.split(",");
+    if (Arrays.asList(deviceList).containsAll(Arrays.asList(devices))) {
+      return (jobs == null) ? devices
+          : Arrays.copyOf(devices, Math.min(getJobs(jobs), devices.length));
     } else {
       System.out.println("Given device label is incorrect. Please check for errors.");
       System.out.println("Available devices:");
@@ -213,7 +249,77 @@ public class CommandLineParser {
       }
       System.exit(0);
     }
-    return "";
+    return new String[0];
+  }
+
+  /**
+   * Get number of devices to run extraction on in parallel.<br><br>
+   *
+   * Defaults to one device. When the number is incorrect, APC halts.
+   *
+   * @param jobs Number of jobs given by user
+   * @return Number of jobs chosen by APC
+   */
+  private static int getJobs(String jobs) {
+    if (jobs == null) {
+      return 1;
+    }
+    try {
+      int n = Integer.parseInt(jobs);
+      if (n > 0) {
+        return n;
+      }
+    } catch (NumberFormatException ignored) {
+    }
+    printUsage("Please supply a positive number of jobs.");
+    return 1;
+  }
+
+  /**
+   * Get number of equivalent views clicked, e.g. of rows of a list.<br><br>
+   *
+   * Defaults to three views. Zero clicks all views. When the number is incorrect, APC halts.
+   *
+   * @param sample Number of views given by user
+   * @return Number of views chosen by APC
+   */
+  private static int getSampleSize(String sample) {
+    if (sample == null) {
+      return 3;
+    }
+    try {
+      int n = Integer.parseInt(sample);
+      if (n >= 0) {
+        return n;
+      }
+    } catch (NumberFormatException ignored) {
+    }
+    printUsage("Please supply a non-negative number of views to sample.");
+    return 3;
+  }
+
+  /**
+   * Get languages of navigation keywords.<br><br>
+   *
+   * Input is a comma-separated list of languages. Defaults to German and English. When a language
+   * has no keyword pack, APC halts.
+   *
+   * @param locales Languages given by user
+   * @return Languages chosen by APC, comma-separated
+   */
+  private static String getLocales(String locales) {
+    if (locales == null) {
+      return "de,en";
+    }
+    String[] list = locales.split(",");
+    for (int i = 0; i < list.length; i++) {
+      list[i] = list[i].trim().toLowerCase();
+      if (!Arrays.asList(LOCALES).contains(list[i])) {
+        printUsage(String.format("Please supply languages with keyword packs: %s.",
+            String.join(", ", LOCALES)));
+      }
+    }
+    return String.join(",", list);
   }
 
   /**
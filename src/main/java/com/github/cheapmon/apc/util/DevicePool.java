@@ -0,0 +1,135 @@
+package com.github.cheapmon.apc.util;
+
+import com.github.cheapmon.apc.APCOptions;
+import com.github.cheapmon.apc.failure.APCException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run extraction on several devices in parallel.<br><br>
+ *
+ * <ul>
+ * <li>Put list of application IDs into one shared queue</li>
+ * <li>Install, run tests and remove APC on every device concurrently</li>
+ * <li>Wait for all devices to finish</li>
+ * </ul>
+ *
+ * Devices pull their next ID from the queue, so idle devices take over work instead of waiting for
+ * a static share. All devices send their results to one collector on the host computer.<br><br>
+ *
+ * Outcomes are recorded in a run journal. When resuming, IDs finished in an earlier run are left
+ * out of the queue.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class DevicePool {
+
+  /**
+   * Port on host computer results are sent to
+   */
+  private static final int PORT = 2000;
+
+  /**
+   * Path to run journal
+   */
+  private static final Path JOURNAL = Paths.get("out", "apc.journal");
+
+  /**
+   * Options for extraction
+   */
+  private final APCOptions options;
+
+  /**
+   * Create new pool for all devices chosen in options.
+   *
+   * @param options Options for extraction
+   */
+  public DevicePool(APCOptions options) {
+    this.options = options;
+  }
+
+  /**
+   * Run extraction on all devices and wait until every device has finished.
+   *
+   * @throws APCException Extraction fails on at least one device
+   */
+  public void run() throws APCException {
+    String[] devices = this.options.getDevices();
+    boolean resume = this.options.getResume();
+    Set<String> finished = resume ? RunJournal.finished(JOURNAL) : Collections.emptySet();
+    WorkQueue queue = WorkQueue.fromFile(this.options.getFile(), finished);
+    if (resume) {
+      APCLogger.info(DevicePool.class, String.format("Resuming, %s ids already finished, %s left",
+          finished.size(), queue.size()));
+    }
+    RunJournal journal = new RunJournal(JOURNAL, resume);
+    ResultCollector collector = new ResultCollector(PORT, queue, journal, this.options);
+    APCException failure = null;
+    try {
+      collector.start();
+      ExecutorService executor = Executors.newFixedThreadPool(devices.length);
+      List<Future<Void>> futures = new ArrayList<>(devices.length);
+      for (String device : devices) {
+        ADBConnector connector = new ADBConnector(device, collector.getPort(),
+            this.options.getKeep());
+        futures.add(executor.submit(() -> {
+          connector.install();
+          connector.runTests(this.options);
+          connector.remove();
+          return null;
+        }));
+      }
+      executor.shutdown();
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException ex) {
+          if (failure == null) {
+            failure = (ex.getCause() instanceof APCException) ? (APCException) ex.getCause()
+                : new APCException("Extraction on device failed", ex.getCause());
+          }
+        } catch (InterruptedException ex) {
+          executor.shutdownNow();
+          throw new APCException("Waiting for devices failed", ex);
+        }
+      }
+    } finally {
+      try {
+        collector.stop();
+      } finally {
+        journal.close();
+      }
+    }
+    ADBConnector.disconnect();
+    this.clean();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Delete generated ID file.
+   *
+   * @throws APCException Deleting file fails
+   */
+  private void clean() throws APCException {
+    try {
+      if (this.options.getFile().getFileName().toString().equals("ids.txt")) {
+        Files.delete(this.options.getFile());
+      }
+    } catch (IOException ex) {
+      throw new APCException("Deleting id file failed", ex);
+    }
+  }
+
+}
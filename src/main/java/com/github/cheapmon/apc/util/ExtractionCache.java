@@ -0,0 +1,138 @@
+package com.github.cheapmon.apc.util;
+
+import com.github.cheapmon.apc.failure.APCException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remember which version of an application has been extracted before.<br><br>
+ *
+ * Entries are keyed by application ID, version code, search algorithm and extraction mode and
+ * appended to a file as lines {@code id version algorithm mode}, the last entry of an ID wins. An
+ * application whose installed version matches its entry and whose result still exists does not
+ * have to be crawled again.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+class ExtractionCache implements AutoCloseable {
+
+  /**
+   * Directory results are written to
+   */
+  private final Path outDir;
+
+  /**
+   * File extension of results
+   */
+  private final String extension;
+
+  /**
+   * Search algorithm and extraction mode of this run
+   */
+  private final String settings;
+
+  /**
+   * Version and settings of last extraction, by application ID
+   */
+  private final Map<String, String> entries = new HashMap<>();
+
+  /**
+   * Writer appending new entries
+   */
+  private final BufferedWriter writer;
+
+  /**
+   * Open cache in output directory.
+   *
+   * @param file Path to cache file
+   * @param outDir Directory results are written to
+   * @param extension File extension of results
+   * @param algorithm Search algorithm of this run
+   * @param mode Extraction mode of this run
+   * @throws APCException Reading or opening cache fails
+   */
+  ExtractionCache(Path file, Path outDir, String extension, String algorithm, String mode)
+      throws APCException {
+    this.outDir = outDir;
+    this.extension = extension;
+    this.settings = String.format("%s %s", algorithm, mode);
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      boolean torn = false;
+      if (Files.exists(file)) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+          for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            String[] parts = line.split(" ");
+            if (parts.length == 4) {
+              this.entries.put(parts[0], String.format("%s %s %s", parts[1], parts[2], parts[3]));
+            }
+          }
+        }
+        try (FileChannel channel = FileChannel.open(file)) {
+          ByteBuffer last = ByteBuffer.allocate(1);
+          torn = channel.size() > 0 && channel.read(last, channel.size() - 1) == 1
+              && last.get(0) != '\n';
+        }
+      }
+      this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      if (torn) {
+        this.writer.newLine();
+      }
+    } catch (IOException ex) {
+      throw new APCException("Opening extraction cache failed", ex);
+    }
+  }
+
+  /**
+   * Check whether this version of an application has already been extracted with the same
+   * settings.
+   *
+   * @param id Application ID
+   * @param version Installed version code
+   * @return Extraction can be skipped
+   */
+  synchronized boolean isFresh(String id, long version) {
+    return String.format("%s %s", version, this.settings).equals(this.entries.get(id))
+        && Files.exists(this.outDir.resolve(String.format("%s.%s", id, this.extension)));
+  }
+
+  /**
+   * Remember successful extraction of an application.
+   *
+   * @param id Application ID
+   * @param version Installed version code
+   * @throws IOException Writing entry fails
+   */
+  synchronized void put(String id, long version) throws IOException {
+    String entry = String.format("%s %s", version, this.settings);
+    this.entries.put(id, entry);
+    this.writer.write(String.format("%s %s", id, entry));
+    this.writer.newLine();
+    this.writer.flush();
+  }
+
+  /**
+   * Close cache file.
+   *
+   * @throws APCException Closing fails
+   */
+  @Override
+  public synchronized void close() throws APCException {
+    try {
+      this.writer.close();
+    } catch (IOException ex) {
+      throw new APCException("Closing extraction cache failed", ex);
+    }
+  }
+
+}
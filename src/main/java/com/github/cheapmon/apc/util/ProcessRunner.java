@@ -0,0 +1,245 @@
+package com.github.cheapmon.apc.util;
+
+import com.github.cheapmon.apc.failure.APCException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Run system calls asynchronously.<br><br>
+ *
+ * Output and error stream of every process are drained concurrently while it runs, so a process
+ * with large output never blocks on a full pipe. Only the first {@link #OUTPUT_MAX} characters of
+ * each stream are kept, every output line can additionally be passed to a listener. Processes
+ * exceeding their deadline are killed. Output of commands run without a process, e.g. by the ADB
+ * server, is read with the same deadline.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+class ProcessRunner {
+
+  /**
+   * Maximum number of characters kept of each stream
+   */
+  private static final int OUTPUT_MAX = 1 << 20;
+
+  /**
+   * Threads draining streams and waiting for processes
+   */
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+    Thread thread = new Thread(r, "ProcessRunner");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * Timer enforcing deadlines of streams
+   */
+  private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+      r -> {
+        Thread thread = new Thread(r, "ProcessRunner-timer");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  /**
+   * Result of a finished process.
+   */
+  static class Result {
+
+    /**
+     * Exit code of process
+     */
+    private final int exitCode;
+
+    /**
+     * Kept part of output stream
+     */
+    private final String output;
+
+    /**
+     * Kept part of error stream
+     */
+    private final String error;
+
+    /**
+     * Create new result.
+     *
+     * @param exitCode Exit code of process
+     * @param output Kept part of output stream
+     * @param error Kept part of error stream
+     */
+    Result(int exitCode, String output, String error) {
+      this.exitCode = exitCode;
+      this.output = output;
+      this.error = error;
+    }
+
+    /**
+     * Get exit code of process.
+     *
+     * @return Exit code
+     */
+    int getExitCode() {
+      return this.exitCode;
+    }
+
+    /**
+     * Get output of process.
+     *
+     * @return Output
+     */
+    String getOutput() {
+      return this.output;
+    }
+
+    /**
+     * Get error output of process.
+     *
+     * @return Error output
+     */
+    String getError() {
+      return this.error;
+    }
+
+  }
+
+  /**
+   * Start process.
+   *
+   * @param commands System commands to run
+   * @param timeout Deadline in milliseconds, 0 for none
+   * @param listener Listener for output lines, may be {@code null}
+   * @return Future result, failing with {@link APCException} if the process cannot be started,
+   *     exceeds its deadline or is interrupted
+   */
+  static CompletableFuture<Result> start(String[] commands, long timeout,
+      Consumer<String> listener) {
+    CompletableFuture<Result> result = new CompletableFuture<>();
+    Process process;
+    try {
+      process = new ProcessBuilder(commands).start();
+    } catch (IOException ex) {
+      result.completeExceptionally(
+          new APCException("Building process for system call failed", ex));
+      return result;
+    }
+    CompletableFuture<String> output = drain(process.getInputStream(), listener);
+    CompletableFuture<String> error = drain(process.getErrorStream(), null);
+    EXECUTOR.execute(() -> {
+      try {
+        boolean finished;
+        if (timeout > 0) {
+          finished = process.waitFor(timeout, TimeUnit.MILLISECONDS);
+        } else {
+          process.waitFor();
+          finished = true;
+        }
+        if (!finished) {
+          process.destroyForcibly();
+          result.completeExceptionally(new APCException(String.format(
+              "System call '%s' timed out after %s ms", String.join(" ", commands), timeout)));
+          return;
+        }
+        result.complete(new Result(process.exitValue(), output.join(), error.join()));
+      } catch (InterruptedException ex) {
+        process.destroyForcibly();
+        result.completeExceptionally(
+            new APCException("Waiting for system call failed", ex));
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Read stream line by line until its end.
+   *
+   * @param stream Stream to read
+   * @param listener Listener for lines, may be {@code null}
+   * @return Future kept part of stream
+   */
+  static CompletableFuture<String> drain(InputStream stream, Consumer<String> listener) {
+    return CompletableFuture.supplyAsync(() -> {
+      StringBuilder builder = new StringBuilder();
+      try {
+        readLines(stream, listener, builder);
+      } catch (IOException ex) {
+        APCLogger.debug(ProcessRunner.class, ex.getMessage());
+      }
+      return builder.toString();
+    }, EXECUTOR);
+  }
+
+  /**
+   * Read output of a command until its end, within a deadline for the whole command.<br><br>
+   *
+   * The stream is closed when the deadline passes, which aborts reading. Only a stream read to
+   * its end within the deadline counts as success.
+   *
+   * @param stream Output of command
+   * @param timeout Deadline in milliseconds, 0 for none
+   * @param listener Listener for output lines, may be {@code null}
+   * @param command Command, for messages
+   * @return Future kept part of output, failing with {@link APCException} if reading fails or the
+   *     deadline passes
+   */
+  static CompletableFuture<String> read(InputStream stream, long timeout,
+      Consumer<String> listener, String command) {
+    CompletableFuture<String> result = new CompletableFuture<>();
+    EXECUTOR.execute(() -> {
+      StringBuilder builder = new StringBuilder();
+      try {
+        readLines(stream, listener, builder);
+        result.complete(builder.toString());
+      } catch (IOException ex) {
+        result.completeExceptionally(
+            new APCException(String.format("Reading output of '%s' failed", command), ex));
+      }
+    });
+    if (timeout > 0) {
+      ScheduledFuture<?> timer = TIMER.schedule(() -> {
+        if (result.completeExceptionally(new APCException(
+            String.format("Command '%s' timed out after %s ms", command, timeout)))) {
+          try {
+            stream.close();
+          } catch (IOException ignored) {
+          }
+        }
+      }, timeout, TimeUnit.MILLISECONDS);
+      result.whenComplete((output, ex) -> timer.cancel(false));
+    }
+    return result;
+  }
+
+  /**
+   * Read stream line by line until its end, then close it.
+   *
+   * @param stream Stream to read
+   * @param listener Listener for lines, may be {@code null}
+   * @param builder Builder to keep the first {@link #OUTPUT_MAX} characters in
+   * @throws IOException Reading fails
+   */
+  private static void readLines(InputStream stream, Consumer<String> listener,
+      StringBuilder builder) throws IOException {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (listener != null) {
+          listener.accept(line);
+        }
+        if (builder.length() + line.length() < OUTPUT_MAX) {
+          builder.append(line).append('\n');
+        }
+      }
+    }
+  }
+
+}
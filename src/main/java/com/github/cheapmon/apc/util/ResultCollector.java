@@ -0,0 +1,846 @@
+package com.github.cheapmon.apc.util;
+
+import com.github.cheapmon.apc.APCOptions;
+import com.github.cheapmon.apc.APCOptions.ExtractionMode;
+import com.github.cheapmon.apc.failure.APCException;
+import com.github.cheapmon.apc.util.RunJournal.Outcome;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Collect results sent by all devices on one port.<br><br>
+ *
+ * A single selector thread serves every connection. Every device keeps one connection open for the
+ * whole run and sends frames: type (1 byte), flags (1 byte), payload length (4 bytes) and payload.
+ * Devices request the next application ID ({@link #NEXT}, answered by {@link #ID}), send results
+ * ({@link #RESULT}), report the outcome of an application ({@link #STATUS}) and report that they
+ * are done ({@link #DONE}). After installing an application, devices send its version
+ * ({@link #VERSION}) and skip the crawl if the host answers that this version has already been
+ * extracted ({@link #CACHED}). A result payload holds the length
+ * of the application ID (2 bytes), the ID and the text, which is deflated if the
+ * {@link #COMPRESSED} flag is set. A next payload holds the label of the device.<br><br>
+ *
+ * Results are streamed to a temporary file in the output directory and moved to their final name
+ * once complete, so no result is ever held in memory as a whole. Every connection is read through
+ * one fixed buffer, and new connections are only accepted while less than {@link #MAX_CONNECTIONS}
+ * are open. Both slow down sending devices when writing to disk falls behind.<br><br>
+ *
+ * Handed out IDs, outcomes and complete results are recorded in the run journal. IDs whose device
+ * disconnects before reporting their outcome are put back into the queue.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class ResultCollector {
+
+  /**
+   * Size of buffer for reading from connections
+   */
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Size of frame header: type (1 byte), flags (1 byte) and payload length (4 bytes)
+   */
+  private static final int HEADER_SIZE = 6;
+
+  /**
+   * Maximum payload length of frames other than results
+   */
+  private static final int PAYLOAD_MAX = 65536;
+
+  /**
+   * Frame requesting the next application ID, containing the label of the device
+   */
+  private static final byte NEXT = 1;
+
+  /**
+   * Frame containing the next application ID, empty if there is no work left
+   */
+  private static final byte ID = 2;
+
+  /**
+   * Frame containing an extracted policy or model
+   */
+  private static final byte RESULT = 3;
+
+  /**
+   * Frame telling the host that a device has finished
+   */
+  private static final byte DONE = 4;
+
+  /**
+   * Frame containing the outcome (1 byte) of an application and its ID
+   */
+  private static final byte STATUS = 5;
+
+  /**
+   * Frame containing the installed version code (8 bytes) of an application and its ID
+   */
+  private static final byte VERSION = 6;
+
+  /**
+   * Frame answering a version frame, 1 if the application has already been extracted
+   */
+  private static final byte CACHED = 7;
+
+  /**
+   * Outcomes sent in status frames, indexed by their code
+   */
+  private static final Outcome[] OUTCOMES = {null, Outcome.INSTALLED, Outcome.NOT_AVAILABLE,
+      Outcome.FAILED, Outcome.NOT_FOUND, Outcome.STOPPED};
+
+  /**
+   * Flag for deflated result text
+   */
+  private static final byte COMPRESSED = 1;
+
+  /**
+   * Valid application IDs, i.e. Android package names
+   */
+  private static final Pattern APPLICATION_ID =
+      Pattern.compile("[A-Za-z][A-Za-z0-9_]*(\\.[A-Za-z][A-Za-z0-9_]*)+");
+
+  /**
+   * Name of extraction cache in output directory
+   */
+  private static final String CACHE = "apc.cache";
+
+  /**
+   * Maximum number of connections open at the same time
+   */
+  private static final int MAX_CONNECTIONS = 64;
+
+  /**
+   * Time to wait for open connections after collector has been stopped
+   */
+  private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+  /**
+   * State of a single connection
+   */
+  private enum State {
+    HEADER, ID_LENGTH, ID, BODY, PAYLOAD
+  }
+
+  /**
+   * Server channel devices connect to
+   */
+  private final ServerSocketChannel server;
+
+  /**
+   * Selector for all channels
+   */
+  private final Selector selector;
+
+  /**
+   * Buffer shared by all connections for reading
+   */
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+  /**
+   * Buffer shared by all connections for decompressing
+   */
+  private final byte[] inflated = new byte[BUFFER_SIZE];
+
+  /**
+   * Queue of application IDs handed out to devices
+   */
+  private final WorkQueue queue;
+
+  /**
+   * Versions of applications extracted in earlier runs
+   */
+  private final ExtractionCache cache;
+
+  /**
+   * Journal of this run
+   */
+  private final RunJournal journal;
+
+  /**
+   * Directory results are written to
+   */
+  private final Path outDir;
+
+  /**
+   * File extension of results
+   */
+  private final String extension;
+
+  /**
+   * Thread running the selector loop
+   */
+  private Thread thread;
+
+  /**
+   * Number of open connections
+   */
+  private int connections;
+
+  /**
+   * Number of devices which have finished
+   */
+  private int finished;
+
+  /**
+   * Whether the collector has been asked to stop
+   */
+  private volatile boolean stopping;
+
+  /**
+   * Failure of the selector loop
+   */
+  private volatile IOException failure;
+
+  /**
+   * Open new collector on a port of the host computer.
+   *
+   * @param port Port to listen on, or 0 for any free port
+   * @param queue Queue of application IDs
+   * @param journal Journal of this run
+   * @param options Options for extraction
+   * @param outDir Directory to write results to
+   * @throws APCException Opening port or extraction cache fails
+   */
+  ResultCollector(int port, WorkQueue queue, RunJournal journal, APCOptions options,
+      Path outDir) throws APCException {
+    this.queue = queue;
+    this.journal = journal;
+    this.outDir = outDir;
+    this.extension = (options.getExtractionMode() == ExtractionMode.MODEL) ? "xml" : "txt";
+    this.cache = new ExtractionCache(outDir.resolve(CACHE), outDir, this.extension,
+        options.getAlgorithm().toString(), options.getExtractionMode().toString());
+    try {
+      Files.createDirectories(outDir);
+      this.selector = Selector.open();
+      this.server = ServerSocketChannel.open();
+      this.server.bind(new InetSocketAddress(port));
+      this.server.configureBlocking(false);
+      this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException ex) {
+      throw new APCException("Opening result collector failed", ex);
+    }
+  }
+
+  /**
+   * Open new collector writing to the default output directory.
+   *
+   * @param port Port to listen on
+   * @param queue Queue of application IDs
+   * @param journal Journal of this run
+   * @param options Options for extraction
+   * @throws APCException Opening port or extraction cache fails
+   */
+  ResultCollector(int port, WorkQueue queue, RunJournal journal, APCOptions options)
+      throws APCException {
+    this(port, queue, journal, options, Paths.get("out"));
+  }
+
+  /**
+   * Get port this collector listens on.
+   *
+   * @return Port
+   */
+  public int getPort() {
+    return this.server.socket().getLocalPort();
+  }
+
+  /**
+   * Start collecting in background.
+   */
+  public void start() {
+    this.thread = new Thread(this::loop, "ResultCollector");
+    this.thread.start();
+  }
+
+  /**
+   * Stop collecting.<br><br>
+   *
+   * Pending and open connections are still served until they are closed by the device, or until
+   * {@link #DRAIN_TIMEOUT} has passed.
+   *
+   * @throws APCException Collecting failed
+   */
+  public void stop() throws APCException {
+    this.stopping = true;
+    this.selector.wakeup();
+    try {
+      this.thread.join();
+    } catch (InterruptedException ex) {
+      throw new APCException("Stopping result collector failed", ex);
+    }
+    this.cache.close();
+    if (this.failure != null) {
+      throw new APCException("Collecting results failed", this.failure);
+    }
+    APCLogger.info(ResultCollector.class,
+        String.format("Collected results of %s devices", this.finished));
+  }
+
+  /**
+   * Serve all connections until stopped.
+   */
+  private void loop() {
+    long deadline = Long.MAX_VALUE;
+    try {
+      while (true) {
+        if (this.stopping) {
+          if (deadline == Long.MAX_VALUE) {
+            deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+          }
+          this.accept();
+          if (this.connections == 0 || System.currentTimeMillis() > deadline) {
+            break;
+          }
+        }
+        this.selector.select(this.stopping ? 100 : 0);
+        for (SelectionKey key : this.selector.selectedKeys()) {
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            this.accept();
+          } else {
+            Connection connection = (Connection) key.attachment();
+            try {
+              if (key.isWritable()) {
+                connection.write(key);
+              }
+              if (key.isValid() && key.isReadable()) {
+                connection.read(key);
+              }
+            } catch (IOException ex) {
+              APCLogger.debug(ResultCollector.class, ex.getMessage());
+              this.close(key);
+            }
+          }
+        }
+        this.selector.selectedKeys().clear();
+      }
+    } catch (IOException ex) {
+      this.failure = ex;
+    } finally {
+      for (SelectionKey key : this.selector.keys()) {
+        if (key.attachment() != null) {
+          this.close(key);
+        }
+      }
+      try {
+        this.server.close();
+        this.selector.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  /**
+   * Accept pending connections while below the connection limit.
+   *
+   * @throws IOException Accepting fails
+   */
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while (this.connections < MAX_CONNECTIONS && (channel = this.server.accept()) != null) {
+      channel.configureBlocking(false);
+      channel.register(this.selector, SelectionKey.OP_READ, new Connection(channel));
+      this.connections++;
+    }
+    this.server.keyFor(this.selector)
+        .interestOps(this.connections < MAX_CONNECTIONS ? SelectionKey.OP_ACCEPT : 0);
+  }
+
+  /**
+   * Close a connection and discard its incomplete result.<br><br>
+   *
+   * Application IDs handed out on this connection without a reported outcome are put back into
+   * the queue, or recorded as failed if they have already been put back once.
+   *
+   * @param key Key of connection
+   */
+  private void close(SelectionKey key) {
+    Connection connection = (Connection) key.attachment();
+    if (connection == null) {
+      return;
+    }
+    key.attach(null);
+    key.cancel();
+    connection.discard();
+    for (String id : connection.pending) {
+      if (this.queue.requeue(id)) {
+        APCLogger.info(ResultCollector.class,
+            String.format("%s disconnected before finishing %s, queueing it again",
+                connection.device, id));
+      } else {
+        APCLogger.info(ResultCollector.class,
+            String.format("%s disconnected before finishing %s again, giving up",
+                connection.device, id));
+        try {
+          this.journal.record(id, Outcome.FAILED);
+        } catch (IOException ex) {
+          APCLogger.debug(ResultCollector.class, ex.getMessage());
+        }
+      }
+    }
+    try {
+      connection.channel.close();
+    } catch (IOException ignored) {
+    }
+    this.connections--;
+    if (this.server.isOpen()) {
+      this.server.keyFor(this.selector).interestOps(SelectionKey.OP_ACCEPT);
+    }
+  }
+
+  /**
+   * Connection to a single device.
+   */
+  private class Connection {
+
+    /**
+     * Channel of this connection
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Header of current frame
+     */
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    /**
+     * Replies not yet written to the device
+     */
+    private final Deque<ByteBuffer> replies = new ArrayDeque<>();
+
+    /**
+     * Application IDs handed out on this connection whose outcome has not been reported yet
+     */
+    private final Set<String> pending = new HashSet<>();
+
+    /**
+     * Label of device, its remote address until the device has sent one
+     */
+    private String device;
+
+    /**
+     * Current state of this connection
+     */
+    private State state = State.HEADER;
+
+    /**
+     * Type of current frame
+     */
+    private byte type;
+
+    /**
+     * Flags of current frame
+     */
+    private byte flags;
+
+    /**
+     * Bytes of current frame not yet read
+     */
+    private int remaining;
+
+    /**
+     * Buffered part of current frame
+     */
+    private ByteBuffer field;
+
+    /**
+     * Application ID of current result
+     */
+    private String id;
+
+    /**
+     * Application ID of last version frame
+     */
+    private String versionID;
+
+    /**
+     * Version code of last version frame
+     */
+    private long version;
+
+    /**
+     * Temporary file of current result
+     */
+    private Path part;
+
+    /**
+     * Channel of temporary file
+     */
+    private FileChannel file;
+
+    /**
+     * Decompressor of current result, if compressed
+     */
+    private Inflater inflater;
+
+    /**
+     * Create new connection.
+     *
+     * @param channel Channel of device
+     */
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+      try {
+        this.device = String.valueOf(channel.getRemoteAddress());
+      } catch (IOException ex) {
+        this.device = "unknown device";
+      }
+    }
+
+    /**
+     * Read available input and process it frame by frame.
+     *
+     * @param key Key of this connection
+     * @throws IOException Reading or writing result fails
+     */
+    void read(SelectionKey key) throws IOException {
+      ByteBuffer in = ResultCollector.this.buffer;
+      in.clear();
+      if (this.channel.read(in) < 0) {
+        if (this.state != State.HEADER || this.header.position() > 0) {
+          APCLogger.info(ResultCollector.class, "Connection closed in the middle of a frame");
+        }
+        ResultCollector.this.close(key);
+        return;
+      }
+      in.flip();
+      while (in.hasRemaining()) {
+        switch (this.state) {
+          case HEADER:
+            if (fill(in, this.header)) {
+              this.startFrame();
+            }
+            break;
+          case ID_LENGTH:
+            if (fill(in, this.field)) {
+              this.remaining -= 2;
+              int length = this.field.getShort() & 0xFFFF;
+              if (length > this.remaining) {
+                throw new IOException("Invalid application id");
+              }
+              this.field = ByteBuffer.allocate(length);
+              this.state = State.ID;
+            }
+            break;
+          case ID:
+            if (fill(in, this.field)) {
+              this.remaining -= this.field.limit();
+              this.open(checkID(StandardCharsets.UTF_8.decode(this.field).toString()));
+            }
+            break;
+          case BODY:
+            int n = Math.min(this.remaining, in.remaining());
+            this.writeBody(in, n);
+            this.remaining -= n;
+            break;
+          case PAYLOAD:
+            if (fill(in, this.field)) {
+              this.handle(key);
+            }
+            break;
+        }
+        if (this.state == State.BODY && this.remaining == 0) {
+          this.finish();
+        }
+      }
+    }
+
+    /**
+     * Decode header of a new frame.
+     *
+     * @throws IOException Header is invalid
+     */
+    private void startFrame() throws IOException {
+      this.type = this.header.get();
+      this.flags = this.header.get();
+      this.remaining = this.header.getInt();
+      this.header.clear();
+      if (this.type == RESULT) {
+        if (this.remaining < 2) {
+          throw new IOException("Invalid result frame");
+        }
+        this.field = ByteBuffer.allocate(2);
+        this.state = State.ID_LENGTH;
+      } else {
+        if (this.remaining < 0 || this.remaining > PAYLOAD_MAX) {
+          throw new IOException("Invalid frame length");
+        }
+        this.field = ByteBuffer.allocate(this.remaining);
+        this.state = State.PAYLOAD;
+        if (this.remaining == 0) {
+          this.field.flip();
+          this.handle(this.channel.keyFor(ResultCollector.this.selector));
+        }
+      }
+    }
+
+    /**
+     * Handle a complete frame other than a result.
+     *
+     * @param key Key of this connection
+     * @throws IOException Frame is unknown
+     */
+    private void handle(SelectionKey key) throws IOException {
+      switch (this.type) {
+        case NEXT:
+          if (this.field.hasRemaining()) {
+            this.device = StandardCharsets.UTF_8.decode(this.field).toString();
+          }
+          String next = ResultCollector.this.queue.next(this.device);
+          if (next != null) {
+            this.pending.add(next);
+            ResultCollector.this.journal.record(next, Outcome.QUEUED);
+          }
+          this.reply(key, ID,
+              (next == null) ? new byte[0] : next.getBytes(StandardCharsets.UTF_8));
+          break;
+        case VERSION:
+          if (this.field.remaining() < 8) {
+            throw new IOException("Invalid version frame");
+          }
+          this.version = this.field.getLong();
+          this.versionID = checkID(StandardCharsets.UTF_8.decode(this.field).toString());
+          boolean fresh = ResultCollector.this.cache.isFresh(this.versionID, this.version);
+          if (fresh) {
+            this.pending.remove(this.versionID);
+            ResultCollector.this.journal.record(this.versionID, Outcome.UNCHANGED);
+            APCLogger.info(ResultCollector.class, String.format(
+                "%s version %s already extracted, skipping", this.versionID, this.version));
+          }
+          this.reply(key, CACHED, new byte[]{(byte) (fresh ? 1 : 0)});
+          break;
+        case STATUS:
+          byte code = this.field.hasRemaining() ? this.field.get() : 0;
+          if (code <= 0 || code >= OUTCOMES.length) {
+            throw new IOException(String.format("Unknown outcome %s", code));
+          }
+          String id = checkID(StandardCharsets.UTF_8.decode(this.field).toString());
+          if (OUTCOMES[code] != Outcome.INSTALLED) {
+            this.pending.remove(id);
+          }
+          ResultCollector.this.journal.record(id, OUTCOMES[code]);
+          APCLogger.debug(ResultCollector.class, String.format("%s is %s", id, OUTCOMES[code]));
+          break;
+        case DONE:
+          ResultCollector.this.finished++;
+          APCLogger.debug(ResultCollector.class,
+              String.format("Device %s has finished", this.device));
+          break;
+        default:
+          throw new IOException(String.format("Unknown frame %s", this.type));
+      }
+      this.field = null;
+      this.state = State.HEADER;
+    }
+
+    /**
+     * Queue reply frame for device.
+     *
+     * @param key Key of this connection
+     * @param type Type of frame
+     * @param payload Payload of frame
+     */
+    private void reply(SelectionKey key, byte type, byte[] payload) {
+      ByteBuffer reply = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+      reply.put(type).put((byte) 0).putInt(payload.length).put(payload).flip();
+      this.replies.add(reply);
+      key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Write pending replies to device.
+     *
+     * @param key Key of this connection
+     * @throws IOException Writing fails
+     */
+    void write(SelectionKey key) throws IOException {
+      while (!this.replies.isEmpty()) {
+        this.channel.write(this.replies.peek());
+        if (this.replies.peek().hasRemaining()) {
+          return;
+        }
+        this.replies.poll();
+      }
+      key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Open temporary file for a new result.
+     *
+     * @param id Application ID of result
+     * @throws IOException Opening file fails
+     */
+    private void open(String id) throws IOException {
+      this.id = id;
+      this.part = ResultCollector.this.outDir
+          .resolve(String.format("%s.%s.part", id, ResultCollector.this.extension));
+      this.file = FileChannel.open(this.part, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      if ((this.flags & COMPRESSED) != 0) {
+        this.inflater = new Inflater();
+      }
+      this.field = null;
+      this.state = State.BODY;
+    }
+
+    /**
+     * Write part of result to temporary file, decompressing it if necessary.
+     *
+     * @param in Input buffer
+     * @param n Number of bytes to write
+     * @throws IOException Writing or decompressing fails
+     */
+    private void writeBody(ByteBuffer in, int n) throws IOException {
+      if (this.inflater == null) {
+        ByteBuffer part = in.duplicate();
+        part.limit(part.position() + n);
+        writeFully(this.file, part);
+      } else {
+        byte[] inflated = ResultCollector.this.inflated;
+        this.inflater.setInput(in.array(), in.arrayOffset() + in.position(), n);
+        try {
+          int length;
+          while ((length = this.inflater.inflate(inflated)) > 0) {
+            writeFully(this.file, ByteBuffer.wrap(inflated, 0, length));
+          }
+        } catch (DataFormatException ex) {
+          throw new IOException("Decompressing result failed", ex);
+        }
+      }
+      in.position(in.position() + n);
+    }
+
+    /**
+     * Close temporary file of complete result and move it to its final name.<br><br>
+     *
+     * A compressed result whose deflate stream has not ended is truncated. It is discarded and
+     * recorded as failed instead.
+     *
+     * @throws IOException Moving file fails
+     */
+    private void finish() throws IOException {
+      boolean truncated = this.inflater != null && !this.inflater.finished();
+      if (truncated) {
+        this.discard();
+        this.pending.remove(this.id);
+        ResultCollector.this.journal.record(this.id, Outcome.FAILED);
+        APCLogger.info(ResultCollector.class,
+            String.format("Compressed result of %s is truncated, discarding it", this.id));
+        this.part = null;
+        this.id = null;
+        this.state = State.HEADER;
+        return;
+      }
+      this.file.close();
+      if (this.inflater != null) {
+        this.inflater.end();
+        this.inflater = null;
+      }
+      Path target = ResultCollector.this.outDir
+          .resolve(String.format("%s.%s", this.id, ResultCollector.this.extension));
+      Files.move(this.part, target, StandardCopyOption.REPLACE_EXISTING);
+      this.pending.remove(this.id);
+      ResultCollector.this.journal.record(this.id, Outcome.EXTRACTED);
+      if (this.id.equals(this.versionID)) {
+        ResultCollector.this.cache.put(this.id, this.version);
+      }
+      APCLogger.info(ResultCollector.class, String.format("Output was written to %s", target));
+      this.file = null;
+      this.part = null;
+      this.id = null;
+      this.state = State.HEADER;
+    }
+
+    /**
+     * Delete temporary file of incomplete result.
+     */
+    void discard() {
+      if (this.inflater != null) {
+        this.inflater.end();
+        this.inflater = null;
+      }
+      if (this.file == null) {
+        return;
+      }
+      try {
+        this.file.close();
+        Files.deleteIfExists(this.part);
+      } catch (IOException ex) {
+        APCLogger.debug(ResultCollector.class, ex.getMessage());
+      }
+      this.file = null;
+    }
+
+  }
+
+  /**
+   * Check that an application ID sent by a device is a package name, before it is used in file
+   * names or the journal.
+   *
+   * @param id Application ID
+   * @return Application ID
+   * @throws IOException ID is no package name, e.g. contains path separators
+   */
+  private static String checkID(String id) throws IOException {
+    if (!APPLICATION_ID.matcher(id).matches()) {
+      throw new IOException("Invalid application id");
+    }
+    return id;
+  }
+
+  /**
+   * Copy bytes from input into a buffer until it is full.
+   *
+   * @param in Input buffer
+   * @param field Buffer to fill
+   * @return Whether the buffer is full, it is flipped for reading then
+   */
+  private static boolean fill(ByteBuffer in, ByteBuffer field) {
+    int n = Math.min(in.remaining(), field.remaining());
+    ByteBuffer part = in.duplicate();
+    part.limit(part.position() + n);
+    field.put(part);
+    in.position(in.position() + n);
+    if (field.hasRemaining()) {
+      return false;
+    }
+    field.flip();
+    return true;
+  }
+
+  /**
+   * Write buffer to file completely.
+   *
+   * @param file File to write to
+   * @param data Data to write
+   * @throws IOException Writing fails
+   */
+  private static void writeFully(FileChannel file, ByteBuffer data) throws IOException {
+    while (data.hasRemaining()) {
+      file.write(data);
+    }
+  }
+
+}
@@ -0,0 +1,190 @@
+package com.github.cheapmon.apc.util;
+
+import com.github.cheapmon.apc.failure.APCException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only record of what happened to every application ID of a run.<br><br>
+ *
+ * Every outcome is appended as one line {@code OUTCOME id}. Lines are written immediately but only
+ * forced to disk every {@link #SYNC_BATCH} entries or after {@link #SYNC_INTERVAL}, so a crash
+ * loses at most the last batch. A torn last line is ignored when reading.<br><br>
+ *
+ * An interrupted run is resumed by reading the journal once and skipping every ID with a final
+ * outcome.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+class RunJournal implements AutoCloseable {
+
+  /**
+   * Number of entries after which the journal is forced to disk
+   */
+  private static final int SYNC_BATCH = 64;
+
+  /**
+   * Time after which pending entries are forced to disk
+   */
+  private static final long SYNC_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+  /**
+   * Outcome of a single application ID.<br><br>
+   *
+   * Final outcomes tell apart why no result exists: the application was not available, the search
+   * found no policy ({@link #NOT_FOUND}) or the search exceeded its budget ({@link #STOPPED}).
+   * Extraction failing with an error ({@link #FAILED}) is recorded but retried on resume.
+   */
+  enum Outcome {
+    QUEUED, INSTALLED, EXTRACTED, UNCHANGED, NOT_AVAILABLE, FAILED, NOT_FOUND, STOPPED;
+
+    /**
+     * Check whether application ID needs no further work.<br><br>
+     *
+     * {@link #FAILED} is not final, so resuming a run retries application IDs whose extraction
+     * failed with an error.
+     *
+     * @return Outcome is final
+     */
+    boolean isFinal() {
+      return this != QUEUED && this != INSTALLED && this != FAILED;
+    }
+  }
+
+  /**
+   * Channel of journal file
+   */
+  private final FileChannel channel;
+
+  /**
+   * Number of entries not yet forced to disk
+   */
+  private int pending;
+
+  /**
+   * Time of last sync
+   */
+  private long synced = System.currentTimeMillis();
+
+  /**
+   * Open journal for writing.
+   *
+   * @param file Path to journal file
+   * @param resume Whether to append to an existing journal instead of starting a new one
+   * @throws APCException Opening journal fails
+   */
+  RunJournal(Path file, boolean resume) throws APCException {
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      if (!resume) {
+        Files.deleteIfExists(file);
+      }
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      long size = this.channel.size();
+      this.channel.position(size);
+      if (size > 0) {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        this.channel.read(last, size - 1);
+        if (last.get(0) != '\n') {
+          this.channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+        }
+      }
+    } catch (IOException ex) {
+      throw new APCException("Opening run journal failed", ex);
+    }
+  }
+
+  /**
+   * Read application IDs with a final outcome from journal.
+   *
+   * @param file Path to journal file
+   * @return Finished IDs, empty if there is no journal
+   * @throws APCException Reading journal fails
+   */
+  static Set<String> finished(Path file) throws APCException {
+    Map<String, Outcome> outcomes = new HashMap<>();
+    if (Files.exists(file)) {
+      try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          int space = line.indexOf(' ');
+          if (space < 0) {
+            continue;
+          }
+          try {
+            outcomes.put(line.substring(space + 1), Outcome.valueOf(line.substring(0, space)));
+          } catch (IllegalArgumentException ignored) {
+          }
+        }
+      } catch (IOException ex) {
+        throw new APCException("Reading run journal failed", ex);
+      }
+    }
+    Set<String> finished = new HashSet<>();
+    outcomes.forEach((id, outcome) -> {
+      if (outcome.isFinal()) {
+        finished.add(id);
+      }
+    });
+    return finished;
+  }
+
+  /**
+   * Append outcome of application ID.
+   *
+   * @param id Application ID
+   * @param outcome Outcome
+   * @throws IOException Writing fails
+   */
+  synchronized void record(String id, Outcome outcome) throws IOException {
+    ByteBuffer line = StandardCharsets.UTF_8.encode(String.format("%s %s\n", outcome, id));
+    while (line.hasRemaining()) {
+      this.channel.write(line);
+    }
+    this.pending++;
+    if (this.pending >= SYNC_BATCH
+        || System.currentTimeMillis() - this.synced >= SYNC_INTERVAL) {
+      this.sync();
+    }
+  }
+
+  /**
+   * Force pending entries to disk.
+   *
+   * @throws IOException Syncing fails
+   */
+  synchronized void sync() throws IOException {
+    if (this.pending > 0) {
+      this.channel.force(false);
+      this.pending = 0;
+    }
+    this.synced = System.currentTimeMillis();
+  }
+
+  /**
+   * Force pending entries to disk and close journal.
+   *
+   * @throws APCException Closing fails
+   */
+  @Override
+  public synchronized void close() throws APCException {
+    try {
+      this.sync();
+      this.channel.close();
+    } catch (IOException ex) {
+      throw new APCException("Closing run journal failed", ex);
+    }
+  }
+
+}
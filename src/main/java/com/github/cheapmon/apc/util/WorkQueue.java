@@ -0,0 +1,115 @@
+package com.github.cheapmon.apc.util;
+
+import com.github.cheapmon.apc.failure.APCException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Shared queue of application IDs.<br><br>
+ *
+ * Devices request their next ID whenever they are done with the previous one, so a slow app only
+ * holds back the device it runs on. IDs of a device which disconnects before reporting their
+ * outcome are handed out once more.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class WorkQueue {
+
+  /**
+   * Application IDs not yet handed out
+   */
+  private final ConcurrentLinkedQueue<String> ids;
+
+  /**
+   * Total number of application IDs
+   */
+  private final int size;
+
+  /**
+   * Number of application IDs handed out so far
+   */
+  private final AtomicInteger handedOut = new AtomicInteger();
+
+  /**
+   * Application IDs which have already been handed out again
+   */
+  private final Set<String> requeued = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Create new queue from list of application IDs.
+   *
+   * @param ids Application IDs
+   */
+  WorkQueue(List<String> ids) {
+    this.ids = new ConcurrentLinkedQueue<>(ids);
+    this.size = ids.size();
+  }
+
+  /**
+   * Create new queue from file containing application IDs.
+   *
+   * @param file File containing IDs, separated by newlines
+   * @param skip IDs to leave out, e.g. finished in an earlier run
+   * @return New queue
+   * @throws APCException Reading file fails
+   */
+  public static WorkQueue fromFile(Path file, Set<String> skip) throws APCException {
+    try {
+      return new WorkQueue(Files.readAllLines(file).stream().map(String::trim)
+          .filter(id -> !id.isEmpty() && !skip.contains(id)).collect(Collectors.toList()));
+    } catch (IOException ex) {
+      throw new APCException("Reading id file failed", ex);
+    }
+  }
+
+  /**
+   * Hand out next application ID to a device.
+   *
+   * @param device Label of requesting device
+   * @return Next ID or {@code null} if all IDs have been handed out
+   */
+  String next(String device) {
+    String id = this.ids.poll();
+    if (id != null) {
+      APCLogger.info(WorkQueue.class, String.format("[%s/%s] %s -> %s",
+          this.handedOut.incrementAndGet(), this.size, id, device));
+    }
+    return id;
+  }
+
+  /**
+   * Hand out application ID once more, after the device it was handed out to disconnected
+   * without reporting its outcome.<br><br>
+   *
+   * Every ID is handed out again only once, so an application crashing every device it runs on
+   * does not stop the whole run.
+   *
+   * @param id Application ID
+   * @return ID has been put back, {@code false} if it has already been handed out again
+   */
+  boolean requeue(String id) {
+    if (!this.requeued.add(id)) {
+      return false;
+    }
+    this.handedOut.decrementAndGet();
+    this.ids.add(id);
+    return true;
+  }
+
+  /**
+   * Get total number of application IDs.
+   *
+   * @return Number of IDs
+   */
+  public int size() {
+    return this.size;
+  }
+
+}
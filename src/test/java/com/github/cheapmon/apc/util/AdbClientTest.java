@@ -0,0 +1,188 @@
+package com.github.cheapmon.apc.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.github.cheapmon.apc.failure.APCException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the ADB client against a fake ADB server on a loopback socket.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class AdbClientTest {
+
+  /**
+   * Answer of the ADB server to successful requests
+   */
+  private static final String OKAY = "OKAY";
+
+  /**
+   * Answers of the fake server by request, a request without answer closes the connection
+   */
+  private final Map<String, String> answers = new ConcurrentHashMap<>();
+
+  /**
+   * Requests received by the fake server, in order
+   */
+  private final List<String> requests = new CopyOnWriteArrayList<>();
+
+  /**
+   * Socket of the fake server
+   */
+  private ServerSocket server;
+
+  /**
+   * Client under test
+   */
+  private AdbClient client;
+
+  /**
+   * Start fake server on any free port.
+   *
+   * @throws Exception Starting fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    this.server = new ServerSocket(0);
+    Thread thread = new Thread(this::serve, "FakeAdbServer");
+    thread.setDaemon(true);
+    thread.start();
+    this.client = new AdbClient("localhost", this.server.getLocalPort());
+  }
+
+  /**
+   * Stop fake server.
+   *
+   * @throws Exception Stopping fails
+   */
+  @After
+  public void tearDown() throws Exception {
+    this.server.close();
+  }
+
+  /**
+   * Requests are prefixed with their hex length, the device list is read as hex length string.
+   *
+   * @throws Exception Communication fails
+   */
+  @Test
+  public void listsReadyDevices() throws Exception {
+    this.answers.put("host:devices",
+        OKAY + string("emulator-5554\tdevice\n0123456789\toffline\nR58M\tdevice\n"));
+    assertArrayEquals(new String[]{"emulator-5554", "R58M"}, this.client.devices());
+    assertEquals("host:devices", this.requests.get(0));
+  }
+
+  /**
+   * A refused request is reported with the message of the server.
+   *
+   * @throws Exception Communication fails
+   */
+  @Test
+  public void reportsFailure() throws Exception {
+    this.answers.put("host:devices", "FAIL" + string("server shutting down"));
+    try {
+      this.client.devices();
+      fail("Refused request was not reported");
+    } catch (APCException ex) {
+      assertTrue(ex.getMessage().contains("server shutting down"));
+    }
+  }
+
+  /**
+   * Shell commands select the device first and return the output until the connection ends.
+   *
+   * @throws Exception Communication fails
+   */
+  @Test
+  public void runsShellCommand() throws Exception {
+    this.answers.put("host:transport:emulator-5554", OKAY);
+    this.answers.put("shell:echo hello", OKAY + "hello\nworld\n");
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (InputStream in = this.client.shell("emulator-5554", "echo hello", 1000)) {
+      byte[] buffer = new byte[64];
+      for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+        output.write(buffer, 0, n);
+      }
+    }
+    assertEquals("hello\nworld\n", new String(output.toByteArray(), StandardCharsets.UTF_8));
+    assertEquals("host:transport:emulator-5554", this.requests.get(0));
+    assertEquals("shell:echo hello", this.requests.get(1));
+  }
+
+  /**
+   * The server counts as available only if it answers with OKAY.
+   *
+   * @throws Exception Communication fails
+   */
+  @Test
+  public void checksAvailability() throws Exception {
+    this.answers.put("host:version", OKAY + string("0029"));
+    assertTrue(this.client.isAvailable());
+    this.answers.put("host:version", "WHAT");
+    assertFalse(this.client.isAvailable());
+  }
+
+  /**
+   * Answer requests of all connections until the server is closed.
+   */
+  private void serve() {
+    while (true) {
+      try (Socket socket = this.server.accept()) {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        while (true) {
+          byte[] length = new byte[4];
+          in.readFully(length);
+          byte[] request = new byte[Integer.parseInt(new String(length, StandardCharsets.US_ASCII), 16)];
+          in.readFully(request);
+          String line = new String(request, StandardCharsets.UTF_8);
+          this.requests.add(line);
+          String answer = this.answers.get(line);
+          if (answer == null) {
+            break;
+          }
+          out.write(answer.getBytes(StandardCharsets.UTF_8));
+          out.flush();
+          if (!answer.startsWith(OKAY) || line.startsWith("shell:")) {
+            break;
+          }
+        }
+      } catch (IOException ex) {
+        if (this.server.isClosed()) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Prefix string with its length as four hex digits.
+   *
+   * @param value String
+   * @return Prefixed string
+   */
+  private static String string(String value) {
+    return String.format("%04x%s", value.getBytes(StandardCharsets.UTF_8).length, value);
+  }
+
+}
@@ -0,0 +1,311 @@
+package com.github.cheapmon.apc.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.cheapmon.apc.APCOptions;
+import com.github.cheapmon.apc.APCOptions.Algorithm;
+import com.github.cheapmon.apc.APCOptions.ExtractionMode;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the result collector by sending frames over a loopback connection.
+ *
+ * @author <a href="mailto:simon.kaleschke.leipzig@gmail.com">cheapmon</a>
+ */
+public class ResultCollectorTest {
+
+  /**
+   * Output directory
+   */
+  private Path outDir;
+
+  /**
+   * Journal of test run
+   */
+  private RunJournal journal;
+
+  /**
+   * Queue of collector under test
+   */
+  private WorkQueue queue;
+
+  /**
+   * Collector under test
+   */
+  private ResultCollector collector;
+
+  /**
+   * Start collector on any free port, handing out two IDs.
+   *
+   * @throws Exception Starting fails
+   */
+  @Before
+  public void setUp() throws Exception {
+    this.outDir = Files.createTempDirectory("apc-collector");
+    this.journal = new RunJournal(this.outDir.resolve("apc.journal"), false);
+    APCOptions options = new APCOptions();
+    options.setExtractionMode(ExtractionMode.POLICY);
+    options.setAlgorithm(Algorithm.BFS);
+    this.queue = new WorkQueue(Arrays.asList("com.example.first", "com.example.second"));
+    this.collector = new ResultCollector(0, this.queue, this.journal, options, this.outDir);
+    this.collector.start();
+  }
+
+  /**
+   * Stop collector and delete output directory.
+   *
+   * @throws Exception Stopping fails
+   */
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> files = Files.walk(this.outDir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  /**
+   * A result sent one byte at a time is written completely.
+   *
+   * @throws Exception Sending fails
+   */
+  @Test
+  public void acceptsSplitFrames() throws Exception {
+    byte[] frame = result("com.example.first", "split text".getBytes(StandardCharsets.UTF_8),
+        false);
+    try (Socket socket = this.connect()) {
+      OutputStream out = socket.getOutputStream();
+      for (byte b : frame) {
+        out.write(b);
+        out.flush();
+      }
+    }
+    this.stop();
+    assertEquals("split text", this.read("com.example.first"));
+    assertEquals(Collections.singletonList("EXTRACTED com.example.first"), this.journal());
+  }
+
+  /**
+   * Several frames sent in one write are all handled, in order.
+   *
+   * @throws Exception Sending fails
+   */
+  @Test
+  public void acceptsConcatenatedFrames() throws Exception {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    frames.write(frame(1, new byte[0]));
+    frames.write(result("com.example.first", "first".getBytes(StandardCharsets.UTF_8), false));
+    frames.write(result("com.example.second", "second".getBytes(StandardCharsets.UTF_8), false));
+    frames.write(frame(4, new byte[0]));
+    try (Socket socket = this.connect()) {
+      socket.getOutputStream().write(frames.toByteArray());
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      assertEquals(2, in.readByte());
+      assertEquals(0, in.readByte());
+      byte[] id = new byte[in.readInt()];
+      in.readFully(id);
+      assertEquals("com.example.first", new String(id, StandardCharsets.UTF_8));
+    }
+    this.stop();
+    assertEquals("first", this.read("com.example.first"));
+    assertEquals("second", this.read("com.example.second"));
+    assertEquals(Arrays.asList("QUEUED com.example.first", "EXTRACTED com.example.first",
+        "EXTRACTED com.example.second"), this.journal());
+  }
+
+  /**
+   * A compressed result larger than the read buffer is decompressed, even if split.
+   *
+   * @throws Exception Sending fails
+   */
+  @Test
+  public void acceptsCompressedFrames() throws Exception {
+    StringBuilder text = new StringBuilder();
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      text.append((char) ('a' + random.nextInt(26)));
+    }
+    byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+    byte[] frame = result("com.example.first", deflate(body), true);
+    try (Socket socket = this.connect()) {
+      OutputStream out = socket.getOutputStream();
+      for (int i = 0; i < frame.length; i += 1000) {
+        out.write(frame, i, Math.min(1000, frame.length - i));
+        out.flush();
+      }
+    }
+    this.stop();
+    assertArrayEquals(body, Files.readAllBytes(this.outDir.resolve("com.example.first.txt")));
+  }
+
+  /**
+   * A compressed result whose deflate stream is cut off is discarded and recorded as failed.
+   *
+   * @throws Exception Sending fails
+   */
+  @Test
+  public void rejectsTruncatedCompressedFrames() throws Exception {
+    byte[] body = new byte[50000];
+    new Random(42).nextBytes(body);
+    byte[] deflated = deflate(body);
+    byte[] frame = result("com.example.first",
+        Arrays.copyOf(deflated, deflated.length / 2), true);
+    try (Socket socket = this.connect()) {
+      socket.getOutputStream().write(frame);
+    }
+    this.stop();
+    assertFalse(Files.exists(this.outDir.resolve("com.example.first.txt")));
+    assertFalse(Files.exists(this.outDir.resolve("com.example.first.txt.part")));
+    assertEquals(Collections.singletonList("FAILED com.example.first"), this.journal());
+    assertFalse(RunJournal.finished(this.outDir.resolve("apc.journal"))
+        .contains("com.example.first"));
+  }
+
+  /**
+   * A result whose application ID is no package name is rejected before any file is written.
+   *
+   * @throws Exception Sending fails
+   */
+  @Test
+  public void rejectsInvalidApplicationIds() throws Exception {
+    try (Socket socket = this.connect()) {
+      socket.getOutputStream().write(result("../com.example.first",
+          "outside".getBytes(StandardCharsets.UTF_8), false));
+      assertEquals(-1, socket.getInputStream().read());
+    }
+    this.stop();
+    assertFalse(Files.exists(this.outDir.getParent().resolve("com.example.first.txt")));
+    assertFalse(Files.exists(this.outDir.getParent().resolve("com.example.first.txt.part")));
+    assertEquals(Collections.emptyList(), this.journal());
+  }
+
+  /**
+   * An ID handed out to a device which disconnects without reporting its outcome is handed out
+   * again, but only once.
+   *
+   * @throws Exception Sending fails
+   */
+  @Test
+  public void requeuesUnfinishedIds() throws Exception {
+    try (Socket socket = this.connect()) {
+      socket.getOutputStream().write(frame(1, "emulator-5554".getBytes(StandardCharsets.UTF_8)));
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      assertEquals(2, in.readByte());
+      assertEquals(0, in.readByte());
+      byte[] id = new byte[in.readInt()];
+      in.readFully(id);
+      assertEquals("com.example.first", new String(id, StandardCharsets.UTF_8));
+    }
+    this.stop();
+    assertEquals("com.example.second", this.queue.next("test"));
+    assertEquals("com.example.first", this.queue.next("test"));
+    assertFalse(this.queue.requeue("com.example.first"));
+    assertEquals(Collections.singletonList("QUEUED com.example.first"), this.journal());
+  }
+
+  /**
+   * Connect to collector.
+   *
+   * @return Socket
+   * @throws IOException Connecting fails
+   */
+  private Socket connect() throws IOException {
+    return new Socket("localhost", this.collector.getPort());
+  }
+
+  /**
+   * Stop collector after all connections are closed and close journal.
+   *
+   * @throws Exception Stopping fails
+   */
+  private void stop() throws Exception {
+    this.collector.stop();
+    this.journal.close();
+  }
+
+  /**
+   * Read result file.
+   *
+   * @param id Application ID
+   * @return Content of result
+   * @throws IOException Reading fails
+   */
+  private String read(String id) throws IOException {
+    Path file = this.outDir.resolve(id + ".txt");
+    assertTrue(Files.exists(file));
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Read journal lines.
+   *
+   * @return Lines of journal
+   * @throws IOException Reading fails
+   */
+  private List<String> journal() throws IOException {
+    return Files.readAllLines(this.outDir.resolve("apc.journal"));
+  }
+
+  /**
+   * Build frame.
+   *
+   * @param type Type of frame
+   * @param payload Payload
+   * @return Header and payload
+   */
+  private static byte[] frame(int type, byte[] payload) {
+    return ByteBuffer.allocate(6 + payload.length).put((byte) type).put((byte) 0)
+        .putInt(payload.length).put(payload).array();
+  }
+
+  /**
+   * Build result frame.
+   *
+   * @param id Application ID
+   * @param body Text, deflated if compressed
+   * @param compressed Whether text is deflated
+   * @return Header and payload
+   */
+  private static byte[] result(String id, byte[] body, boolean compressed) {
+    byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+    int length = 2 + bytes.length + body.length;
+    return ByteBuffer.allocate(6 + length).put((byte) 3).put((byte) (compressed ? 1 : 0))
+        .putInt(length).putShort((short) bytes.length).put(bytes).put(body).array();
+  }
+
+  /**
+   * Deflate bytes.
+   *
+   * @param bytes Bytes
+   * @return Deflated bytes
+   * @throws IOException Deflating fails
+   */
+  private static byte[] deflate(byte[] bytes) throws IOException {
+    ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+    try (DeflaterOutputStream out = new DeflaterOutputStream(deflated)) {
+      out.write(bytes);
+    }
+    return deflated.toByteArray();
+  }
+
+}